@@ -1,9 +1,44 @@
 package com.fitness.activityservice.config;
 
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import com.fitness.activityservice.model.IdempotencyRecord;
+import com.fitness.activityservice.model.OutboxEvent;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
 
 @Configuration
 @EnableMongoAuditing
 public class MongoConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "activity.outbox.transactional", havingValue = "true")
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory databaseFactory) {
+        // Multi-document transactions need a replica set, so this stays opt-in
+        return new MongoTransactionManager(databaseFactory);
+    }
+
+    @Bean
+    public ApplicationRunner mongoIndexInitializer(MongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        // Declares the indexes annotated on our documents; auto-index-creation is off by default
+        return args -> {
+            IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+            for (Class<?> document : List.of(Activity.class, ActivityRollup.class, IdempotencyRecord.class, OutboxEvent.class)) {
+                IndexOperations indexOps = mongoTemplate.indexOps(document);
+                resolver.resolveIndexFor(document).forEach(indexOps::ensureIndex);
+            }
+        };
+    }
 }
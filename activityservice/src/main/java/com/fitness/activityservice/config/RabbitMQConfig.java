@@ -21,6 +21,12 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
 
+    @Value("${rabbitmq.backfill.queue.name}")
+    private String backfillQueue;
+
+    @Value("${rabbitmq.backfill.routing-key}")
+    private String backfillRoutingKey;
+
     @Bean
     public Queue activityQueue() {
         // This declares a queue name
@@ -39,6 +45,16 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(activityQueue).to(activityExchange).with(routingKey);
     }
 
+    @Bean
+    public Queue backfillQueue() {
+        return new Queue(backfillQueue, true);
+    }
+
+    @Bean
+    public Binding backfillBinding(Queue backfillQueue, DirectExchange activityExchange) {
+        return BindingBuilder.bind(backfillQueue).to(activityExchange).with(backfillRoutingKey);
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         // This converts Java object into Json before sending to queue.
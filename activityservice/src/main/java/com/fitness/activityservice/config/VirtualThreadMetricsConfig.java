@@ -0,0 +1,18 @@
+package com.fitness.activityservice.config;
+
+import io.micrometer.java21.instrument.binder.jdk.VirtualThreadMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadMetricsConfig {
+
+    @Bean(destroyMethod = "close")
+    public VirtualThreadMetrics virtualThreadMetrics() {
+        // Streams JFR jdk.VirtualThreadPinned events into jvm.threads.virtual.pinned, so a blocking call
+        // made while holding a monitor shows up under load instead of silently stalling a carrier thread
+        return new VirtualThreadMetrics();
+    }
+}
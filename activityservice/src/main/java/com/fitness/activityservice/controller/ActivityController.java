@@ -1,12 +1,23 @@
 package com.fitness.activityservice.controller;
 
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.BatchActivityResponse;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.ActivityStatsResponse;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.RollupPeriod;
+import com.fitness.activityservice.service.ActivityRollupService;
 import com.fitness.activityservice.service.ActivityService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -16,15 +27,44 @@ public class ActivityController {
     @Autowired
     private ActivityService activityService;
 
+    @Autowired
+    private ActivityRollupService rollupService;
+
     @PostMapping
-    ResponseEntity<ActivityResponse> trackActivity(@RequestBody ActivityRequest request, @RequestHeader("X-User-ID") String userId) {
+    ResponseEntity<ActivityResponse> trackActivity(@RequestBody ActivityRequest request, @RequestHeader("X-User-ID") String userId,
+                                                   @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         if (userId != null) request.setUserId(userId);
-        return ResponseEntity.ok(activityService.trackActivity(request));
+        return ResponseEntity.ok(activityService.trackActivity(request, idempotencyKey));
+    }
+
+    @PostMapping("/batch")
+    ResponseEntity<BatchActivityResponse> trackActivities(@RequestBody List<ActivityRequest> requests, @RequestHeader("X-User-ID") String userId) {
+        return ResponseEntity.ok(activityService.trackActivities(userId, requests));
     }
 
     @GetMapping
-    ResponseEntity<List<ActivityResponse>> getUserActivities(@RequestHeader("X-User-ID") String userId) {
-        return ResponseEntity.ok(activityService.getUserActivities(userId));
+    ResponseEntity<ActivityPage> getUserActivities(@RequestHeader("X-User-ID") String userId,
+                                                   @RequestParam(defaultValue = "20") int limit,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) ActivityType type,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        return ResponseEntity.ok(activityService.getUserActivities(userId, limit, cursor, type, from, to));
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> exportUserActivities(@RequestHeader("X-User-ID") String userId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> activityService.exportUserActivities(userId, out));
+    }
+
+    @GetMapping("/stats")
+    ResponseEntity<List<ActivityStatsResponse>> getUserStats(@RequestHeader("X-User-ID") String userId,
+                                                             @RequestParam(defaultValue = "DAY") RollupPeriod period,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(rollupService.getStats(userId, period, from, to));
     }
 
     @GetMapping("/{activityId}")
@@ -0,0 +1,24 @@
+package com.fitness.activityservice.controller;
+
+import com.fitness.activityservice.service.ActivityRollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Operator endpoint: POST /actuator/rollups {"userId": "..."} recomputes that user's rollups.
+// Served on the management port only (management.server.*), never through the gateway.
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "rollups")
+public class ActivityRollupEndpoint {
+    private final ActivityRollupService rollupService;
+
+    @WriteOperation
+    public Map<String, Object> rebuild(String userId) {
+        rollupService.rebuild(userId);
+        return Map.of("rebuilt", userId);
+    }
+}
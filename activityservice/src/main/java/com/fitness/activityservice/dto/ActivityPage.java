@@ -0,0 +1,12 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ActivityPage {
+    private List<ActivityResponse> items;
+    // Opaque continuation token; null on the last page
+    private String nextCursor;
+}
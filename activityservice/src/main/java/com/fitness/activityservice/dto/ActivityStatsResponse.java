@@ -0,0 +1,17 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.RollupPeriod;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class ActivityStatsResponse {
+    private RollupPeriod period;
+    private LocalDate bucketStart;
+    private ActivityType type;
+    private long sessions;
+    private long totalDuration;
+    private long totalCalories;
+}
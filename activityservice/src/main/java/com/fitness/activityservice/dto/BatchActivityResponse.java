@@ -0,0 +1,12 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchActivityResponse {
+    private int succeeded;
+    private int failed;
+    private List<BatchItemResult> results;
+}
@@ -0,0 +1,11 @@
+package com.fitness.activityservice.dto;
+
+import lombok.Data;
+
+@Data
+public class BatchItemResult {
+    private int index;
+    private boolean success;
+    private ActivityResponse activity;
+    private String error;
+}
@@ -1,5 +1,6 @@
 package com.fitness.activityservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -7,6 +8,7 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -14,6 +16,7 @@ import java.time.LocalDateTime;
 import java.util.Map;
 
 @Document(collection = "activities")
+@CompoundIndex(name = "user_start_time_idx", def = "{'userId': 1, 'startTime': -1, '_id': -1}")
 @Data
 @Builder
 @AllArgsConstructor
@@ -35,4 +38,15 @@ public class Activity {
 
     @LastModifiedDate
     private LocalDateTime updatedAt;
+
+    // Set until OutboxRelay has published the activity; not part of the message payload
+    @JsonIgnore
+    private OutboxState outbox;
+
+    // The rollup generation this activity is counted in; see ActivityRollupService
+    @JsonIgnore
+    private Long rollupGeneration;
+
+    @JsonIgnore
+    private String rollupClaim;
 }
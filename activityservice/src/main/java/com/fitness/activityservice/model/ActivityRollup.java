@@ -0,0 +1,34 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Document(collection = "activity_rollups")
+@CompoundIndex(name = "user_generation_period_bucket_idx", def = "{'userId': 1, 'generation': 1, 'period': 1, 'bucketStart': -1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRollup {
+    // userId:period:bucketStart:type[:generation], so every increment is an upsert on _id
+    @Id
+    private String id;
+    private String userId;
+    // Only the user's current generation is served; a rebuild fills the next one and swaps
+    private long generation;
+    private RollupPeriod period;
+    private LocalDate bucketStart;
+    private ActivityType type;
+    private long sessions;
+    private long totalDuration;
+    private long totalCalories;
+    private LocalDateTime updatedAt;
+}
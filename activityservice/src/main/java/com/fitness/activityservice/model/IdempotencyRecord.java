@@ -0,0 +1,32 @@
+package com.fitness.activityservice.model;
+
+import com.fitness.activityservice.dto.ActivityResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "activity_idempotency")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord {
+    @Id
+    private String key;
+    private String userId;
+
+    // Null while the original request is still being processed
+    private ActivityResponse response;
+
+    // Lease on an unfinished claim: once claim-timeout has passed, a retry may take it over
+    private LocalDateTime claimedAt;
+
+    @Indexed(expireAfter = "24h")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,36 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Document(collection = "activity_outbox")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    private String id;
+    private String activityId;
+    private String routingKey;
+    private Activity payload;
+    private int attempts;
+
+    // Doubles as the relay's claim lease: pushed forward while a batch is in flight
+    @Indexed
+    private LocalDateTime nextAttemptAt;
+    private String claimedBy;
+
+    // Lets the relay's lag gauge read the oldest event without a collection scan
+    @CreatedDate
+    @Indexed
+    private LocalDateTime createdAt;
+}
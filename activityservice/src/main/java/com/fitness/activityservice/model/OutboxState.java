@@ -0,0 +1,28 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.Indexed;
+
+import java.time.LocalDateTime;
+
+// Pending-publish state embedded in the activity document, so the activity and its event are one
+// atomic write on a standalone MongoDB. Removed once the broker confirms the message.
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxState {
+    private String routingKey;
+    private int attempts;
+
+    // Sparse: only activities still waiting to be published are in these indexes
+    @Indexed(sparse = true)
+    private LocalDateTime nextAttemptAt;
+    private String claimedBy;
+
+    @Indexed(sparse = true)
+    private LocalDateTime createdAt;
+}
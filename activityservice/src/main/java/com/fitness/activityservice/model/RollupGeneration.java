@@ -0,0 +1,24 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Per-user pointer to the rollup generation being served. It lives in the rollups collection so a
+// writer can check it in the same ordered bulk write as its increments.
+@Document(collection = "activity_rollups")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RollupGeneration {
+    // userId:generation; deliberately no userId field, so rollup queries by userId never match it
+    @Id
+    private String id;
+    private long current;
+    // Last generation handed to a rebuild; a crashed rebuild's partial generation is never reused
+    private long latest;
+}
@@ -0,0 +1,15 @@
+package com.fitness.activityservice.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+public enum RollupPeriod {
+    DAY,
+    WEEK;
+
+    public LocalDate bucketStart(LocalDate date) {
+        // Weeks start on Monday (ISO-8601)
+        return this == WEEK ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : date;
+    }
+}
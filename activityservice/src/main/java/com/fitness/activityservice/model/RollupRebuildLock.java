@@ -0,0 +1,25 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Present while a user's rollups are being rebuilt; new activities for that user wait for it
+@Document(collection = "activity_rollup_locks")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RollupRebuildLock {
+    @Id
+    private String userId;
+    // Lease: a lock left behind by a crashed rebuild stops counting once this passes.
+    // The owner renews it as it goes and gives up if another rebuild has taken it.
+    private LocalDateTime lockedUntil;
+    private String owner;
+}
@@ -0,0 +1,319 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityStatsResponse;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import com.fitness.activityservice.model.RollupGeneration;
+import com.fitness.activityservice.model.RollupPeriod;
+import com.fitness.activityservice.model.RollupRebuildLock;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Activities are counted into per-user rollup generations. Every activity records the generation it is
+// counted in, and whoever atomically moves that marker to generation G adds the activity to G. A rebuild
+// fills a fresh generation, swaps the user's pointer to it and sweeps again, so an activity is counted once
+// whether its writer or the rebuild gets there first, without writers ever waiting on a rebuild.
+@Service
+@Slf4j
+public class ActivityRollupService {
+
+    private static final int REBUILD_CHUNK_SIZE = 500;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+
+    // Hint only: a stale entry is caught by the pointer check in the increment's bulk write
+    private final Cache<String, Long> generations;
+
+    @Value("${activity.rollup.rebuild-on-startup:false}")
+    private boolean rebuildOnStartup;
+
+    @Value("${activity.rollup.rebuild-lease:10m}")
+    private Duration rebuildLease;
+
+    public ActivityRollupService(MongoTemplate mongoTemplate,
+                                 @Value("${activity.rollup.generation-cache.max-size:10000}") long maxSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .build();
+    }
+
+    // Called before the activities are written, so the marker is part of the insert
+    public void stamp(List<Activity> activities) {
+        if (activities.isEmpty()) return;
+        long generation = generations.get(activities.get(0).getUserId(), this::currentGeneration);
+        activities.forEach(activity -> activity.setRollupGeneration(generation));
+    }
+
+    public void stamp(Activity activity) {
+        stamp(List.of(activity));
+    }
+
+    public void apply(Activity activity) {
+        apply(List.of(activity));
+    }
+
+    // Counts one user's freshly saved, stamped activities into their generation
+    public void apply(List<Activity> activities) {
+        if (activities.isEmpty()) return;
+        String userId = activities.get(0).getUserId();
+        long generation = activities.get(0).getRollupGeneration();
+        List<Activity> counted = activities;
+        while (!incrementIfCurrent(userId, generation, counted)) {
+            // A rebuild swapped generations; count whatever it has not already moved into the new one
+            long current = currentGeneration(userId);
+            generations.put(userId, current);
+            counted = move(counted, Criteria.where("rollupGeneration").is(generation), current);
+            generation = current;
+        }
+    }
+
+    public List<ActivityStatsResponse> getStats(String userId, RollupPeriod period, LocalDate from, LocalDate to) {
+        long generation = currentGeneration(userId);
+        Criteria criteria = Criteria.where("userId").is(userId).and("period").is(period)
+                // Rollups written before generations existed have no generation field and belong to 0
+                .and("generation").in(generation == 0 ? Arrays.asList(0L, null) : List.of(generation));
+        if (from != null || to != null) {
+            Criteria bucket = criteria.and("bucketStart");
+            if (from != null) bucket.gte(period.bucketStart(from));
+            if (to != null) bucket.lte(to);
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "bucketStart"));
+        return mongoTemplate.find(query, ActivityRollup.class).stream()
+                .map(this::mapToStats)
+                .collect(Collectors.toList());
+    }
+
+    // Recomputes a user's rollups from the raw activities, e.g. after a backfill
+    public void rebuild(String userId) {
+        String owner = UUID.randomUUID().toString();
+        if (!acquireRebuildLock(userId, owner)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Rollup rebuild already running for userId: " + userId);
+        }
+        try {
+            long generation = allocateGeneration(userId);
+            recount(userId, generation, owner);
+
+            UpdateResult swapped = mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(generationId(userId)).and("current").lt(generation)),
+                    new Update().set("current", generation),
+                    RollupGeneration.class);
+            if (swapped.getModifiedCount() == 0) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "A newer rollup rebuild finished first for userId: " + userId);
+            }
+            generations.put(userId, generation);
+
+            // Activities stamped with the old generation before the swap; later ones fail the pointer check and move themselves
+            recount(userId, generation, owner);
+            // Includes rollups written before generations existed, which have no generation field
+            mongoTemplate.remove(new Query(new Criteria().andOperator(
+                            Criteria.where("userId").is(userId),
+                            new Criteria().orOperator(
+                                    Criteria.where("generation").lt(generation),
+                                    Criteria.where("generation").is(null)))),
+                    ActivityRollup.class);
+        } finally {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(userId).and("owner").is(owner)), RollupRebuildLock.class);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildAllOnStartup() {
+        if (!rebuildOnStartup) return;
+
+        List<String> userIds = mongoTemplate.findDistinct(new Query(), "userId", Activity.class, String.class);
+        log.info("Rebuilding activity rollups for {} users", userIds.size());
+        int rebuilt = 0;
+        for (String userId : userIds) {
+            try {
+                rebuild(userId);
+                rebuilt++;
+            } catch (ResponseStatusException e) {
+                log.info("Skipped rollup rebuild for userId: {}: {}", userId, e.getReason());
+            }
+        }
+        log.info("Activity rollup rebuild finished for {} of {} users", rebuilt, userIds.size());
+    }
+
+    // Moves every activity not yet in this generation into it and counts the ones this rebuild moved
+    private void recount(String userId, long generation, String owner) {
+        Criteria older = new Criteria().orOperator(
+                Criteria.where("rollupGeneration").is(null),
+                Criteria.where("rollupGeneration").lt(generation));
+        Query query = new Query(new Criteria().andOperator(Criteria.where("userId").is(userId), older))
+                .cursorBatchSize(REBUILD_CHUNK_SIZE);
+        List<Activity> chunk = new ArrayList<>(REBUILD_CHUNK_SIZE);
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            activities.forEach(activity -> {
+                chunk.add(activity);
+                if (chunk.size() == REBUILD_CHUNK_SIZE) {
+                    renewRebuildLock(userId, owner);
+                    increment(userId, generation, move(chunk, older, generation));
+                    chunk.clear();
+                }
+            });
+        }
+        if (!chunk.isEmpty()) increment(userId, generation, move(chunk, older, generation));
+    }
+
+    // Conditionally moves the activities' marker to the target generation and returns the ones this call moved
+    private List<Activity> move(List<Activity> activities, Criteria from, long generation) {
+        if (activities.isEmpty()) return activities;
+        String claim = UUID.randomUUID().toString();
+        List<String> ids = activities.stream().map(Activity::getId).toList();
+        mongoTemplate.updateMulti(
+                new Query(new Criteria().andOperator(Criteria.where("_id").in(ids), from)),
+                new Update().set("rollupGeneration", generation).set("rollupClaim", claim),
+                Activity.class);
+        Query moved = new Query(Criteria.where("_id").in(ids).and("rollupClaim").is(claim));
+        moved.fields().include("_id");
+        Set<String> movedIds = mongoTemplate.find(moved, Activity.class).stream()
+                .map(Activity::getId)
+                .collect(Collectors.toSet());
+        return activities.stream().filter(activity -> movedIds.contains(activity.getId())).toList();
+    }
+
+    // The pointer check goes first in an ordered bulk, so nothing is counted into a generation that was
+    // already swapped out; returns false in that case
+    private boolean incrementIfCurrent(String userId, long generation, List<Activity> activities) {
+        if (activities.isEmpty()) return true;
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, ActivityRollup.class);
+        // Creates the pointer at generation 0 on a user's first write; any other generation collides on _id
+        bulkOps.upsert(
+                new Query(Criteria.where("_id").is(generationId(userId)).and("current").is(generation)),
+                new Update().setOnInsert("latest", generation));
+        addIncrements(bulkOps, userId, generation, activities);
+        try {
+            bulkOps.execute();
+            return true;
+        } catch (BulkOperationException e) {
+            boolean swapped = e.getErrors().stream()
+                    .anyMatch(error -> error.getIndex() == 0 && error.getCode() == DUPLICATE_KEY);
+            if (swapped) return false;
+            throw e;
+        }
+    }
+
+    private void increment(String userId, long generation, List<Activity> activities) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+        if (addIncrements(bulkOps, userId, generation, activities) > 0) bulkOps.execute();
+    }
+
+    private int addIncrements(BulkOperations bulkOps, String userId, long generation, List<Activity> activities) {
+        int updates = 0;
+        for (Activity activity : activities) {
+            LocalDateTime time = activity.getStartTime() != null ? activity.getStartTime() : activity.getCreatedAt();
+            // Rollups are per type and per bucket, so neither can be missing
+            if (time == null || activity.getType() == null) continue;
+
+            for (RollupPeriod period : RollupPeriod.values()) {
+                LocalDate bucketStart = period.bucketStart(time.toLocalDate());
+                String id = userId + ":" + period + ":" + bucketStart + ":" + activity.getType()
+                        + (generation == 0 ? "" : ":" + generation);
+                bulkOps.upsert(
+                        new Query(Criteria.where("_id").is(id)),
+                        new Update()
+                                .setOnInsert("userId", userId)
+                                .setOnInsert("generation", generation)
+                                .setOnInsert("period", period)
+                                .setOnInsert("bucketStart", bucketStart)
+                                .setOnInsert("type", activity.getType())
+                                .inc("sessions", 1)
+                                .inc("totalDuration", valueOf(activity.getDuration()))
+                                .inc("totalCalories", valueOf(activity.getCaloriesBurned()))
+                                .set("updatedAt", LocalDateTime.now()));
+                updates++;
+            }
+        }
+        return updates;
+    }
+
+    private long currentGeneration(String userId) {
+        RollupGeneration pointer = mongoTemplate.findById(generationId(userId), RollupGeneration.class);
+        return pointer == null ? 0 : pointer.getCurrent();
+    }
+
+    private long allocateGeneration(String userId) {
+        RollupGeneration pointer = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(generationId(userId))),
+                new Update().inc("latest", 1).setOnInsert("current", 0L),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                RollupGeneration.class);
+        return pointer.getLatest();
+    }
+
+    private String generationId(String userId) {
+        return userId + ":generation";
+    }
+
+    private boolean acquireRebuildLock(String userId, String owner) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            // Takes a missing or expired lock; a live one makes the upsert collide on _id
+            mongoTemplate.upsert(
+                    new Query(Criteria.where("_id").is(userId).and("lockedUntil").lt(now)),
+                    new Update().set("lockedUntil", now.plus(rebuildLease)).set("owner", owner),
+                    RollupRebuildLock.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            log.info("Rollup rebuild already running for userId: {}", userId);
+            return false;
+        }
+    }
+
+    // Keeps a long rebuild's lease alive; losing it means another rebuild may be writing the same user
+    private void renewRebuildLock(String userId, String owner) {
+        UpdateResult renewed = mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(userId).and("owner").is(owner)),
+                new Update().set("lockedUntil", LocalDateTime.now().plus(rebuildLease)),
+                RollupRebuildLock.class);
+        if (renewed.getModifiedCount() == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Rollup rebuild lease lost for userId: " + userId);
+        }
+    }
+
+    private long valueOf(Integer value) {
+        return value == null ? 0 : value;
+    }
+
+    private ActivityStatsResponse mapToStats(ActivityRollup rollup) {
+        ActivityStatsResponse response = new ActivityStatsResponse();
+        response.setPeriod(rollup.getPeriod());
+        response.setBucketStart(rollup.getBucketStart());
+        response.setType(rollup.getType());
+        response.setSessions(rollup.getSessions());
+        response.setTotalDuration(rollup.getTotalDuration());
+        response.setTotalCalories(rollup.getTotalCalories());
+        return response;
+    }
+}
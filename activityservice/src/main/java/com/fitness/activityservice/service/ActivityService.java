@@ -1,17 +1,45 @@
 package com.fitness.activityservice.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.dto.BatchItemResult;
 import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
 import com.fitness.activityservice.repository.ActivityRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.DisconnectedClientHelper;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -24,51 +52,249 @@ public class ActivityService {
     private UserValidationService userValidationService;
 
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private OutboxService outboxService;
 
-    @Value("${rabbitmq.exchange.name}")
-    private String exchange;
+    @Autowired
+    private ActivityRollupService rollupService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${activity.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${activity.page.max-size:100}")
+    private int maxPageSize;
 
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
+    @Value("${activity.export.batch-size:500}")
+    private int exportBatchSize;
+
+    // Only transactional when activity.outbox.transactional registers a MongoTransactionManager;
+    // otherwise the outbox state rides in the activity document and needs no transaction
+    @Transactional
+    public ActivityResponse trackActivity(ActivityRequest request, String idempotencyKey) {
+        // Retries return the original response without touching the repository or the broker
+        String key = idempotencyService.resolveKey(idempotencyKey, request);
+        if (key != null) {
+            Optional<ActivityResponse> original = idempotencyService.findCompleted(key);
+            if (original.isPresent()) return original.get();
+        }
 
-    public ActivityResponse trackActivity(ActivityRequest request) {
         boolean isValidUser = userValidationService.validateUser(request.getUserId());
         if (!isValidUser)
             throw new RuntimeException("Invalid User: " + request.getUserId());
 
-        Activity activity = Activity.builder()
-                .userId(request.getUserId())
-                .type(request.getType())
-                .duration(request.getDuration())
-                .caloriesBurned(request.getCaloriesBurned())
-                .startTime(request.getStartTime())
-                .additionalMetrics(request.getAdditionalMetrics())
-                .build();
-
-        Activity savedActivity = repository.save(activity);
+        if (key != null && !idempotencyService.claim(key, request.getUserId())) {
+            return idempotencyService.findCompleted(key)
+                    .orElseThrow(() -> idempotencyService.inFlight(key));
+        }
 
-        //Publish to RabbitMQ for AI Processing
         try {
-            rabbitTemplate.convertAndSend(exchange, routingKey, savedActivity);
-        } catch (Exception e) {
-            log.error("Fails to publish activity to RabbitMQ: ", e);
+            Activity activity = Activity.builder()
+                    .userId(request.getUserId())
+                    .type(request.getType())
+                    .duration(request.getDuration())
+                    .caloriesBurned(request.getCaloriesBurned())
+                    .startTime(request.getStartTime())
+                    .additionalMetrics(request.getAdditionalMetrics())
+                    .build();
+
+            // Queued for AI Processing in the same write as the activity; OutboxRelay publishes it to RabbitMQ
+            outboxService.stage(activity);
+            rollupService.stamp(activity);
+            Activity savedActivity = repository.save(activity);
+            rollupService.apply(savedActivity);
+            outboxService.enqueue(savedActivity);
+
+            ActivityResponse response = mapToActivity(savedActivity);
+            if (key != null) idempotencyService.complete(key, response);
+            return response;
+        } catch (RuntimeException e) {
+            // Let the client retry with the same key
+            if (key != null) idempotencyService.release(key);
+            throw e;
+        }
+    }
+
+    // Not @Transactional: a single write error inside a Mongo transaction would abort the whole upload
+    public BatchActivityResponse trackActivities(String userId, List<ActivityRequest> requests) {
+        if (requests.size() > maxBatchSize)
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Batch exceeds maximum size of " + maxBatchSize);
+
+        // One validation for the whole upload
+        boolean isValidUser = userValidationService.validateUser(userId);
+        if (!isValidUser)
+            throw new RuntimeException("Invalid User: " + userId);
+
+        Map<Integer, String> errors = new HashMap<>();
+        List<Activity> activities = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < requests.size(); i++) {
+            ActivityRequest request = requests.get(i);
+            if (request == null || request.getType() == null) {
+                errors.put(i, "Activity type is required");
+                continue;
+            }
+            // IDs are assigned up front so every inserted document can be reported back. Auditing treats a
+            // document with an id as not new and would leave createdAt null, so the timestamps are set here.
+            activities.add(Activity.builder()
+                    .id(new ObjectId().toHexString())
+                    .userId(userId)
+                    .type(request.getType())
+                    .duration(request.getDuration())
+                    .caloriesBurned(request.getCaloriesBurned())
+                    .startTime(request.getStartTime())
+                    .additionalMetrics(request.getAdditionalMetrics())
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .build());
+            positions.add(i);
+        }
+
+        // Queued for AI Processing with each insert; OutboxRelay publishes them as a batch
+        outboxService.stageAll(activities);
+        rollupService.stamp(activities);
+        Map<Integer, String> insertErrors = insertUnordered(activities);
+
+        Map<Integer, Activity> saved = new LinkedHashMap<>();
+        for (int i = 0; i < activities.size(); i++) {
+            if (insertErrors.containsKey(i)) errors.put(positions.get(i), insertErrors.get(i));
+            else saved.put(positions.get(i), activities.get(i));
         }
 
-        return mapToActivity(savedActivity);
+        List<Activity> savedActivities = new ArrayList<>(saved.values());
+        rollupService.apply(savedActivities);
+        outboxService.enqueueAll(savedActivities);
+
+        List<BatchItemResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            BatchItemResult result = new BatchItemResult();
+            result.setIndex(i);
+            result.setSuccess(saved.containsKey(i));
+            if (saved.containsKey(i)) result.setActivity(mapToActivity(saved.get(i)));
+            else result.setError(errors.get(i));
+            results.add(result);
+        }
+
+        BatchActivityResponse response = new BatchActivityResponse();
+        response.setSucceeded(saved.size());
+        response.setFailed(requests.size() - saved.size());
+        response.setResults(results);
+        return response;
+    }
+
+    private Map<Integer, String> insertUnordered(List<Activity> activities) {
+        Map<Integer, String> errors = new HashMap<>();
+        if (activities.isEmpty()) return errors;
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class)
+                    .insert(activities)
+                    .execute();
+        } catch (BulkOperationException e) {
+            log.warn("Bulk insert of {} activities had {} failures", activities.size(), e.getErrors().size());
+            e.getErrors().forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+        }
+        return errors;
     }
 
-    public List<ActivityResponse> getUserActivities(String userId) {
-        List<Activity> activities = repository.findByUserId(userId);
-        return activities.stream()
+    public ActivityPage getUserActivities(String userId, int limit, String cursor,
+                                          ActivityType type, LocalDateTime from, LocalDateTime to) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("userId").is(userId));
+        if (type != null) criteria.add(Criteria.where("type").is(type));
+        if (from != null) criteria.add(Criteria.where("startTime").gte(from));
+        if (to != null) criteria.add(Criteria.where("startTime").lt(to));
+        if (cursor != null) criteria.add(afterCursor(cursor));
+
+        // Served by user_start_time_idx, newest first; one extra row tells us if there is a next page
+        Query query = new Query(new Criteria().andOperator(criteria))
+                .with(Sort.by(Sort.Direction.DESC, "startTime", "_id"))
+                .limit(pageSize + 1);
+        List<Activity> activities = mongoTemplate.find(query, Activity.class);
+
+        boolean hasMore = activities.size() > pageSize;
+        if (hasMore) activities = activities.subList(0, pageSize);
+
+        ActivityPage page = new ActivityPage();
+        page.setItems(activities.stream()
                 .map(this::mapToActivity)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+        page.setNextCursor(hasMore ? encodeCursor(activities.get(activities.size() - 1)) : null);
+        return page;
+    }
+
+    private String encodeCursor(Activity last) {
+        String startTime = last.getStartTime() == null ? "" : last.getStartTime().toString();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((startTime + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Criteria afterCursor(String cursor) {
+        LocalDateTime lastStartTime;
+        ObjectId lastId;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            String startTime = decoded.substring(0, separator);
+            lastId = new ObjectId(decoded.substring(separator + 1));
+            lastStartTime = startTime.isEmpty() ? null : LocalDateTime.parse(startTime);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+        }
+
+        // Activities without a startTime sort last in descending order
+        if (lastStartTime == null) {
+            return new Criteria().andOperator(
+                    Criteria.where("startTime").is(null),
+                    Criteria.where("_id").lt(lastId));
+        }
+        return new Criteria().orOperator(
+                Criteria.where("startTime").lt(lastStartTime),
+                new Criteria().andOperator(
+                        Criteria.where("startTime").is(lastStartTime),
+                        Criteria.where("_id").lt(lastId)),
+                Criteria.where("startTime").is(null));
+    }
+
+    public void exportUserActivities(String userId, OutputStream out) {
+        Query query = new Query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Direction.DESC, "startTime", "_id"))
+                .cursorBatchSize(exportBatchSize);
+
+        // One activity in memory at a time; closing the stream kills the server-side cursor
+        int written = 0;
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            Iterator<Activity> iterator = activities.iterator();
+            while (iterator.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(mapToActivity(iterator.next())));
+                out.write('\n');
+                if (++written % exportBatchSize == 0) out.flush();
+            }
+            out.flush();
+        } catch (IOException e) {
+            if (DisconnectedClientHelper.isClientDisconnectedException(e)) {
+                log.info("Client disconnected after {} activities of export for userId: {}", written, userId);
+                return;
+            }
+            // Serialization or server-side write failures are bugs, not a client going away
+            log.error("Export failed after {} activities for userId: {}", written, userId, e);
+            throw new UncheckedIOException(e);
+        }
     }
 
     public ActivityResponse getActivityById(String activityId) {
         return mapToActivity(
                 repository.findById(activityId)
-                        .orElseThrow(()-> new RuntimeException("Activity not found with ID: " + activityId))
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Activity not found with ID: " + activityId))
         );
     }
 
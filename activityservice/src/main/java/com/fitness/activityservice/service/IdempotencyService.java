@@ -0,0 +1,134 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.model.IdempotencyRecord;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration claimTimeout;
+
+    // Recently completed keys, so most retries never reach Mongo
+    private final Cache<String, ActivityResponse> recentKeys;
+
+    public IdempotencyService(MongoTemplate mongoTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${activity.idempotency.cache.max-size:10000}") long maxSize,
+                              @Value("${activity.idempotency.cache.ttl:10m}") Duration ttl,
+                              @Value("${activity.idempotency.claim-timeout:30s}") Duration claimTimeout) {
+        this.mongoTemplate = mongoTemplate;
+        this.claimTimeout = claimTimeout;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "activity-idempotency");
+    }
+
+    // Client keys are scoped per user; without one, retries are matched on userId, startTime and type
+    public String resolveKey(String idempotencyKey, ActivityRequest request) {
+        if (idempotencyKey != null && !idempotencyKey.isBlank())
+            return request.getUserId() + ":" + idempotencyKey.trim();
+        if (request.getStartTime() == null || request.getType() == null)
+            return null;
+        return request.getUserId() + ":" + request.getStartTime() + ":" + request.getType();
+    }
+
+    public Optional<ActivityResponse> findCompleted(String key) {
+        ActivityResponse cached = recentKeys.getIfPresent(key);
+        if (cached != null) return Optional.of(cached);
+
+        IdempotencyRecord record = mongoTemplate.findById(key, IdempotencyRecord.class);
+        if (record == null) return Optional.empty();
+        if (record.getResponse() == null) {
+            // A claim past its lease was left by a request that died; the caller's claim takes it over
+            LocalDateTime expiresAt = record.getClaimedAt() == null ? null : record.getClaimedAt().plus(claimTimeout);
+            if (expiresAt != null && expiresAt.isBefore(LocalDateTime.now())) return Optional.empty();
+            throw inFlight(key, expiresAt == null
+                    ? claimTimeout
+                    : Duration.between(LocalDateTime.now(), expiresAt));
+        }
+
+        recentKeys.put(key, record.getResponse());
+        return Optional.of(record.getResponse());
+    }
+
+    // Inserting the key before the write makes concurrent retries lose on the unique _id
+    public boolean claim(String key, String userId) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            mongoTemplate.insert(IdempotencyRecord.builder()
+                    .key(key)
+                    .userId(userId)
+                    .createdAt(now)
+                    .claimedAt(now)
+                    .build());
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Only one retry can move an expired lease forward, so only one takes over
+            UpdateResult takeover = mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(key)
+                            .and("response").is(null)
+                            .and("claimedAt").lt(now.minus(claimTimeout))),
+                    new Update().set("claimedAt", now),
+                    IdempotencyRecord.class);
+            if (takeover.getModifiedCount() == 1) {
+                log.warn("Took over expired claim for key: {}", key);
+                return true;
+            }
+            log.info("Duplicate activity submission for key: {}", key);
+            return false;
+        }
+    }
+
+    // 409 rather than 500, so clients can tell a duplicate still in flight from a server error
+    public ResponseStatusException inFlight(String key) {
+        return inFlight(key, Duration.ofSeconds(1));
+    }
+
+    public void complete(String key, ActivityResponse response) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(key)),
+                new Update().set("response", response), IdempotencyRecord.class);
+        recentKeys.put(key, response);
+    }
+
+    public void release(String key) {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(key)), IdempotencyRecord.class);
+    }
+
+    private ResponseStatusException inFlight(String key, Duration retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        return new ResponseStatusException(HttpStatus.CONFLICT,
+                "Request is still being processed for Idempotency-Key: " + key) {
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+    }
+}
@@ -0,0 +1,260 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
+import com.fitness.activityservice.model.OutboxState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private final MongoTemplate mongoTemplate;
+    private final RabbitTemplate rabbitTemplate;
+
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong oldestEventAgeSeconds = new AtomicLong();
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+
+    @Value("${activity.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${activity.outbox.confirm-timeout:5s}")
+    private Duration confirmTimeout;
+
+    @Value("${activity.outbox.initial-backoff:1s}")
+    private Duration initialBackoff;
+
+    @Value("${activity.outbox.max-backoff:5m}")
+    private Duration maxBackoff;
+
+    public OutboxRelay(MongoTemplate mongoTemplate, RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.publishedCounter = meterRegistry.counter("activity.outbox.published");
+        this.failedCounter = meterRegistry.counter("activity.outbox.failed");
+        this.batchTimer = meterRegistry.timer("activity.outbox.batch");
+        Gauge.builder("activity.outbox.pending", pendingEvents, AtomicLong::get)
+                .description("Outbox events waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("activity.outbox.lag", oldestEventAgeSeconds, AtomicLong::get)
+                .description("Age in seconds of the oldest unpublished outbox event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${activity.outbox.poll-interval-ms:500}")
+    public void relay() {
+        // Both stores are drained, so events survive a switch of activity.outbox.transactional
+        for (Store store : Store.values()) {
+            int claimed;
+            do {
+                List<OutboxEvent> batch = claimBatch(store);
+                claimed = batch.size();
+                if (!batch.isEmpty()) batchTimer.record(() -> publishBatch(store, batch));
+            } while (claimed == batchSize);
+        }
+        updateLag();
+    }
+
+    private List<OutboxEvent> claimBatch(Store store) {
+        LocalDateTime now = LocalDateTime.now();
+        Query due = new Query(Criteria.where(store.field("nextAttemptAt")).lte(now))
+                .with(Sort.by(store.field("nextAttemptAt")))
+                .limit(batchSize);
+        due.fields().include("_id");
+        List<String> ids = mongoTemplate.find(due, store.document).stream()
+                .map(store::id)
+                .toList();
+        if (ids.isEmpty()) return List.of();
+
+        // Push the due date past the confirm window so other relay instances skip these events
+        String claim = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(ids).and(store.field("nextAttemptAt")).lte(now)),
+                new Update().set(store.field("claimedBy"), claim)
+                        .set(store.field("nextAttemptAt"), now.plus(confirmTimeout.multipliedBy(2))),
+                store.document);
+        return mongoTemplate.find(new Query(Criteria.where(store.field("claimedBy")).is(claim)), store.document).stream()
+                .map(store::toEvent)
+                .toList();
+    }
+
+    private void publishBatch(Store store, List<OutboxEvent> batch) {
+        // Publish the whole batch first, then wait for the broker confirms together
+        Map<OutboxEvent, CorrelationData> inFlight = new LinkedHashMap<>();
+        List<OutboxEvent> failed = new ArrayList<>();
+        for (OutboxEvent event : batch) {
+            CorrelationData correlation = new CorrelationData(event.getId());
+            try {
+                // The timestamp lets consumers measure how long the message waited in its queue
+                rabbitTemplate.convertAndSend(exchange, event.getRoutingKey(), event.getPayload(), message -> {
+                    message.getMessageProperties().setTimestamp(new Date());
+                    return message;
+                }, correlation);
+                inFlight.put(event, correlation);
+            } catch (Exception e) {
+                log.error("Fails to publish activity to RabbitMQ: {}", event.getActivityId(), e);
+                failed.add(event);
+            }
+        }
+
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        List<String> published = new ArrayList<>();
+        inFlight.forEach((event, correlation) -> {
+            try {
+                long remaining = Math.max(deadline - System.nanoTime(), 0);
+                CorrelationData.Confirm confirm = correlation.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+                if (!confirm.isAck()) {
+                    log.warn("Broker nacked activity {}: {}", event.getActivityId(), confirm.getReason());
+                    failed.add(event);
+                } else if (correlation.getReturned() != null) {
+                    // Acked but routed to no queue, so nothing would ever consume it
+                    log.warn("Activity {} was returned unroutable: {}", event.getActivityId(),
+                            correlation.getReturned().getReplyText());
+                    failed.add(event);
+                } else {
+                    published.add(event.getId());
+                }
+            } catch (Exception e) {
+                log.warn("No publisher confirm for activity {}", event.getActivityId());
+                failed.add(event);
+            }
+        });
+
+        if (!published.isEmpty()) {
+            store.markPublished(mongoTemplate, published);
+            publishedCounter.increment(published.size());
+        }
+        if (!failed.isEmpty()) {
+            scheduleRetries(store, failed);
+            failedCounter.increment(failed.size());
+        }
+    }
+
+    private void scheduleRetries(Store store, List<OutboxEvent> failed) {
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, store.document);
+        for (OutboxEvent event : failed) {
+            int attempts = event.getAttempts() + 1;
+            bulkOps.updateOne(
+                    new Query(Criteria.where("_id").is(event.getId())),
+                    new Update().set(store.field("attempts"), attempts)
+                            .set(store.field("nextAttemptAt"), now.plus(backoff(attempts)))
+                            .unset(store.field("claimedBy")));
+        }
+        bulkOps.execute();
+    }
+
+    private Duration backoff(int attempts) {
+        // Exponential backoff capped at max-backoff
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private void updateLag() {
+        long pending = 0;
+        LocalDateTime oldest = null;
+        for (Store store : Store.values()) {
+            pending += store.pending(mongoTemplate);
+            // Walks the createdAt index and reads only that field
+            Query oldestQuery = new Query(Criteria.where(store.field("createdAt")).exists(true))
+                    .with(Sort.by(store.field("createdAt")))
+                    .limit(1);
+            oldestQuery.fields().include(store.field("createdAt"));
+            OutboxEvent event = mongoTemplate.find(oldestQuery, store.document).stream()
+                    .map(store::toEvent)
+                    .findFirst()
+                    .orElse(null);
+            if (event != null && event.getCreatedAt() != null
+                    && (oldest == null || event.getCreatedAt().isBefore(oldest))) {
+                oldest = event.getCreatedAt();
+            }
+        }
+        pendingEvents.set(pending);
+        oldestEventAgeSeconds.set(oldest == null ? 0 : Duration.between(oldest, LocalDateTime.now()).toSeconds());
+    }
+
+    // Where pending events live: the activity_outbox collection (transactional mode) or the
+    // outbox state embedded in each activity (default). Embedded state is read as an OutboxEvent
+    // whose id is the activity id, so the publish and retry code is shared.
+    private enum Store {
+        EVENTS(OutboxEvent.class, ""),
+        ACTIVITIES(Activity.class, "outbox.");
+
+        private final Class<?> document;
+        private final String prefix;
+
+        Store(Class<?> document, String prefix) {
+            this.document = document;
+            this.prefix = prefix;
+        }
+
+        String field(String name) {
+            return prefix + name;
+        }
+
+        String id(Object document) {
+            return document instanceof Activity activity ? activity.getId() : ((OutboxEvent) document).getId();
+        }
+
+        OutboxEvent toEvent(Object document) {
+            if (!(document instanceof Activity activity)) return (OutboxEvent) document;
+            OutboxState state = activity.getOutbox() == null ? new OutboxState() : activity.getOutbox();
+            return OutboxEvent.builder()
+                    .id(activity.getId())
+                    .activityId(activity.getId())
+                    .routingKey(state.getRoutingKey())
+                    .payload(activity)
+                    .attempts(state.getAttempts())
+                    .nextAttemptAt(state.getNextAttemptAt())
+                    .claimedBy(state.getClaimedBy())
+                    .createdAt(state.getCreatedAt())
+                    .build();
+        }
+
+        void markPublished(MongoTemplate mongoTemplate, List<String> ids) {
+            Query published = new Query(Criteria.where("_id").in(ids));
+            if (this == EVENTS) mongoTemplate.remove(published, OutboxEvent.class);
+            else mongoTemplate.updateMulti(published, new Update().unset("outbox"), Activity.class);
+        }
+
+        long pending(MongoTemplate mongoTemplate) {
+            // Metadata count for the event collection; the sparse index holds only pending activities
+            return this == EVENTS
+                    ? mongoTemplate.estimatedCount(OutboxEvent.class)
+                    : mongoTemplate.count(new Query(Criteria.where("outbox.nextAttemptAt").exists(true)), Activity.class);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.OutboxEvent;
+import com.fitness.activityservice.model.OutboxState;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Two ways to record that an activity still has to be published, picked by activity.outbox.transactional:
+// by default the pending state is embedded in the activity before it is written (stage), so a standalone
+// MongoDB writes both atomically; on a replica set a separate event is inserted in the same transaction (enqueue).
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${rabbitmq.routing.key}")
+    private String routingKey;
+
+    @Value("${rabbitmq.backfill.routing-key}")
+    private String backfillRoutingKey;
+
+    @Value("${activity.outbox.transactional:false}")
+    private boolean transactional;
+
+    // Single submissions take the live lane: the user is waiting for the analysis
+    public void stage(Activity activity) {
+        if (!transactional) activity.setOutbox(toState(routingKey));
+    }
+
+    // Bulk imports take the backfill lane
+    public void stageAll(List<Activity> activities) {
+        if (!transactional) activities.forEach(activity -> activity.setOutbox(toState(backfillRoutingKey)));
+    }
+
+    public void enqueue(Activity activity) {
+        if (transactional) mongoTemplate.insert(toEvent(activity, routingKey));
+    }
+
+    public void enqueueAll(List<Activity> activities) {
+        if (!transactional || activities.isEmpty()) return;
+        mongoTemplate.insert(activities.stream().map(activity -> toEvent(activity, backfillRoutingKey)).toList(),
+                OutboxEvent.class);
+    }
+
+    private OutboxState toState(String routingKey) {
+        LocalDateTime now = LocalDateTime.now();
+        return OutboxState.builder()
+                .routingKey(routingKey)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build();
+    }
+
+    private OutboxEvent toEvent(Activity activity, String routingKey) {
+        return OutboxEvent.builder()
+                .activityId(activity.getId())
+                .routingKey(routingKey)
+                .payload(activity)
+                .nextAttemptAt(LocalDateTime.now())
+                .build();
+    }
+}
@@ -1,32 +1,117 @@
 package com.fitness.activityservice.service;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class UserValidationService {
 
     private final WebClient userServiceWebClient;
 
+    // Positive and negative results expire separately; entries past refresh-after are
+    // still served while a background reload runs (stale-while-revalidate)
+    private final AsyncLoadingCache<String, Boolean> validationCache;
+
+    private final MeterRegistry meterRegistry;
+
+    public UserValidationService(WebClient userServiceWebClient,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${user.validation.cache.max-size:10000}") long maxSize,
+                                 @Value("${user.validation.cache.positive-ttl:30m}") Duration positiveTtl,
+                                 @Value("${user.validation.cache.negative-ttl:1m}") Duration negativeTtl,
+                                 @Value("${user.validation.cache.refresh-after:5m}") Duration refreshAfter) {
+        this.userServiceWebClient = userServiceWebClient;
+        this.meterRegistry = meterRegistry;
+        this.validationCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ValidationExpiry(positiveTtl, negativeTtl))
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .buildAsync(new ValidationLoader());
+
+        // Exposes cache.gets{result=hit|miss}, cache.evictions, cache.size
+        CaffeineCacheMetrics.monitor(meterRegistry, validationCache.synchronous(), "user-validation");
+    }
+
     public boolean validateUser(String userId) {
-        log.info("Calling User Validation Service API for userId: {}", userId);
         try {
-            return Boolean.TRUE.equals(userServiceWebClient.get()
-                    .uri("/api/users/{userId}/validate", userId)
-                    .retrieve()
-                    .bodyToMono(Boolean.class)
-                    .block());
-        } catch (WebClientResponseException e) {
-            if (e.getStatusCode() == HttpStatus.NOT_FOUND)
-                throw new RuntimeException("User not found: " + userId);
+            return Boolean.TRUE.equals(validationCache.get(userId).join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof WebClientResponseException responseException) {
+                log.warn("User validation failed for userId: {} with status {}", userId, responseException.getStatusCode());
+                return false;
+            }
+            throw e;
         }
-        return false;
     }
 
+    private Mono<Boolean> fetchValidation(String userId) {
+        log.info("Calling User Validation Service API for userId: {}", userId);
+        return userServiceWebClient.get()
+                .uri("/api/users/{userId}/validate", userId)
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .map(Boolean.TRUE::equals)
+                .defaultIfEmpty(false)
+                // Unknown users are cached as a negative result
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(false));
+    }
+
+    private class ValidationLoader implements AsyncCacheLoader<String, Boolean> {
+        @Override
+        public CompletableFuture<Boolean> asyncLoad(String userId, Executor executor) {
+            return fetchValidation(userId).toFuture();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> asyncReload(String userId, Boolean oldValue, Executor executor) {
+            // A failed reload keeps the stale value until it expires
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return fetchValidation(userId)
+                    .doOnSuccess(valid -> sample.stop(refreshTimer("success")))
+                    .doOnError(e -> sample.stop(refreshTimer("error")))
+                    .toFuture();
+        }
+    }
+
+    private Timer refreshTimer(String outcome) {
+        return Timer.builder("user.validation.refresh")
+                .description("Latency of background user validation refreshes")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record ValidationExpiry(Duration positiveTtl, Duration negativeTtl) implements Expiry<String, Boolean> {
+        @Override
+        public long expireAfterCreate(String userId, Boolean valid, long currentTime) {
+            return (Boolean.TRUE.equals(valid) ? positiveTtl : negativeTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String userId, Boolean valid, long currentTime, long currentDuration) {
+            return expireAfterCreate(userId, valid, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String userId, Boolean valid, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
 }
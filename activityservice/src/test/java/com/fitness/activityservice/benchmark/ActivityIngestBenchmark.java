@@ -0,0 +1,122 @@
+package com.fitness.activityservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load driver for POST /api/activities against a running activityservice.
+ * Run it once with spring.threads.virtual.enabled=false and once with true and compare the output.
+ * In virtual-thread mode it also reports how many times a carrier thread was pinned during the run, read from
+ * jvm.threads.virtual.pinned on the management port (JFR reports pins longer than 20ms). For stack traces of
+ * every pin, start the service with -Djdk.tracePinnedThreads=short.
+ *
+ * Usage: ActivityIngestBenchmark [baseUrl] [userId] [concurrency] [requests] [managementUrl]
+ */
+public class ActivityIngestBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8082";
+        String userId = args.length > 1 ? args[1] : "benchmark-user";
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        String managementUrl = args.length > 4 ? args[4] : "http://localhost:8092";
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        // Warm up connections, JIT and the user validation cache
+        runLoad(client, baseUrl, userId, Math.min(concurrency, 20), Math.min(requests, 500));
+
+        Long pinnedBefore = pinnedCount(client, managementUrl);
+        long start = System.nanoTime();
+        List<Long> latencies = runLoad(client, baseUrl, userId, concurrency, requests);
+        long elapsed = System.nanoTime() - start;
+        Long pinnedAfter = pinnedCount(client, managementUrl);
+
+        Collections.sort(latencies);
+        System.out.printf("requests=%d concurrency=%d errors=%d%n", requests, concurrency, requests - latencies.size());
+        System.out.printf("throughput=%.1f req/s%n", latencies.size() / (elapsed / 1_000_000_000.0));
+        System.out.printf("p50=%.2f ms p99=%.2f ms max=%.2f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+        System.out.println(pinnedBefore == null || pinnedAfter == null
+                ? "pinned=n/a (platform threads, or management port unreachable)"
+                : "pinned=" + (pinnedAfter - pinnedBefore));
+    }
+
+    // Null when the metric is not registered, which is the case in platform-thread mode
+    private static Long pinnedCount(HttpClient client, String managementUrl) {
+        try {
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create(managementUrl + "/actuator/metrics/jvm.threads.virtual.pinned")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) return null;
+            for (JsonNode measurement : new ObjectMapper().readTree(response.body()).path("measurements")) {
+                if ("COUNT".equals(measurement.path("statistic").asText())) return measurement.path("value").asLong();
+            }
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static List<Long> runLoad(HttpClient client, String baseUrl, String userId,
+                                      int concurrency, int requests) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(requests);
+        List<Future<List<Long>>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    List<Long> latencies = new ArrayList<>();
+                    while (remaining.getAndDecrement() > 0) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(activityRequest(baseUrl, userId),
+                                    HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() == 200) latencies.add(System.nanoTime() - start);
+                        } catch (IOException e) {
+                            // Counted as an error like a non-200, instead of ending the worker and the run
+                        }
+                    }
+                    return latencies;
+                }));
+            }
+            List<Long> latencies = new ArrayList<>(requests);
+            for (Future<List<Long>> worker : workers) latencies.addAll(worker.get());
+            return latencies;
+        }
+    }
+
+    private static HttpRequest activityRequest(String baseUrl, String userId) {
+        String body = """
+                {"type":"RUNNING","duration":30,"caloriesBurned":300,"startTime":"%s"}
+                """.formatted(LocalDateTime.now());
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/activities"))
+                .header("Content-Type", "application/json")
+                .header("X-User-ID", userId)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static double percentile(List<Long> sortedNanos, double percentile) {
+        if (sortedNanos.isEmpty()) return 0;
+        int index = (int) Math.ceil(percentile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(index, 0)) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.IdempotencyRecord;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+
+    private static final String KEY = "u1:retry-1";
+
+    private MongoTemplate mongoTemplate;
+    private IdempotencyService service;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        service = new IdempotencyService(mongoTemplate, new SimpleMeterRegistry(), 100, Duration.ofMinutes(10),
+                Duration.ofSeconds(30));
+    }
+
+    @Test
+    void clientKeyIsTrimmedAndScopedToTheUser() {
+        assertEquals("u1:retry-1", service.resolveKey("  retry-1 ", request(ActivityType.RUNNING, LocalDateTime.now())));
+    }
+
+    @Test
+    void withoutAClientKeyTheRequestIsMatchedOnStartTimeAndType() {
+        LocalDateTime startTime = LocalDateTime.of(2025, 3, 1, 7, 30);
+
+        assertEquals("u1:2025-03-01T07:30:RUNNING", service.resolveKey(null, request(ActivityType.RUNNING, startTime)));
+        assertEquals("u1:2025-03-01T07:30:RUNNING", service.resolveKey("  ", request(ActivityType.RUNNING, startTime)));
+    }
+
+    @Test
+    void withoutAClientKeyStartTimeAndTypeAreBothRequired() {
+        assertNull(service.resolveKey(null, request(ActivityType.RUNNING, null)));
+        assertNull(service.resolveKey(null, request(null, LocalDateTime.now())));
+    }
+
+    @Test
+    void unknownKeyIsNotCompleted() {
+        assertEquals(Optional.empty(), service.findCompleted(KEY));
+    }
+
+    @Test
+    void keyStillBeingProcessedIsAConflictWithRetryAfter() {
+        when(mongoTemplate.findById(KEY, IdempotencyRecord.class))
+                .thenReturn(IdempotencyRecord.builder().key(KEY).userId("u1")
+                        .claimedAt(LocalDateTime.now().minusSeconds(10)).build());
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> service.findCompleted(KEY));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+        long retryAfter = Long.parseLong(e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertTrue(retryAfter >= 1 && retryAfter <= 20, "Retry-After " + retryAfter);
+    }
+
+    @Test
+    void expiredClaimIsNotReportedAsInFlight() {
+        when(mongoTemplate.findById(KEY, IdempotencyRecord.class))
+                .thenReturn(IdempotencyRecord.builder().key(KEY).userId("u1")
+                        .claimedAt(LocalDateTime.now().minusMinutes(1)).build());
+
+        assertEquals(Optional.empty(), service.findCompleted(KEY));
+    }
+
+    @Test
+    void completedKeyIsReadFromMongoOnceThenFromTheCache() {
+        ActivityResponse response = new ActivityResponse();
+        when(mongoTemplate.findById(KEY, IdempotencyRecord.class))
+                .thenReturn(IdempotencyRecord.builder().key(KEY).userId("u1").response(response).build());
+
+        assertSame(response, service.findCompleted(KEY).orElseThrow());
+        assertSame(response, service.findCompleted(KEY).orElseThrow());
+        verify(mongoTemplate, times(1)).findById(KEY, IdempotencyRecord.class);
+    }
+
+    @Test
+    void firstClaimWinsAndDuplicatesLose() {
+        assertTrue(service.claim(KEY, "u1"));
+        verify(mongoTemplate).insert(argThat((IdempotencyRecord record) ->
+                KEY.equals(record.getKey()) && "u1".equals(record.getUserId())
+                        && record.getResponse() == null && record.getClaimedAt() != null));
+
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenThrow(new DuplicateKeyException("duplicate _id"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(IdempotencyRecord.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 0L, null));
+        assertFalse(service.claim(KEY, "u1"));
+    }
+
+    @Test
+    void duplicateTakesOverAnExpiredClaim() {
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenThrow(new DuplicateKeyException("duplicate _id"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(IdempotencyRecord.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertTrue(service.claim(KEY, "u1"));
+        verify(mongoTemplate).updateFirst(argThat((Query query) -> query.getQueryObject().containsKey("claimedAt")),
+                any(Update.class), eq(IdempotencyRecord.class));
+    }
+
+    @Test
+    void completeStoresTheResponseAndCachesIt() {
+        ActivityResponse response = new ActivityResponse();
+
+        service.complete(KEY, response);
+
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(IdempotencyRecord.class));
+        assertSame(response, service.findCompleted(KEY).orElseThrow());
+        verify(mongoTemplate, never()).findById(KEY, IdempotencyRecord.class);
+    }
+
+    @Test
+    void releaseRemovesTheClaim() {
+        service.release(KEY);
+
+        verify(mongoTemplate).remove(any(Query.class), eq(IdempotencyRecord.class));
+    }
+
+    private ActivityRequest request(ActivityType type, LocalDateTime startTime) {
+        ActivityRequest request = new ActivityRequest();
+        request.setUserId("u1");
+        request.setType(type);
+        request.setStartTime(startTime);
+        return request;
+    }
+}
@@ -0,0 +1,43 @@
+package com.fitness.aiservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+// Everything GeminiService needs, bound from the gemini.* properties in ai-service.yml
+@ConfigurationProperties("gemini")
+public record GeminiProperties(Api api,
+                               @DefaultValue Client client,
+                               @DefaultValue RateLimit rateLimit,
+                               @DefaultValue CircuitBreaker circuitBreaker) {
+
+    // streamUrl is streamGenerateContent with alt=sse, e.g. .../models/gemini-2.0-flash:streamGenerateContent?alt=sse&key=
+    public record Api(String url,
+                      @DefaultValue("") String streamUrl,
+                      String key) {
+    }
+
+    // callTimeout is the per-call deadline, including time spent waiting for a pooled connection
+    public record Client(@DefaultValue("16") int maxInFlight,
+                         @DefaultValue("1000") int maxPending,
+                         @DefaultValue("60s") Duration pendingAcquireTimeout,
+                         @DefaultValue("5s") Duration connectTimeout,
+                         @DefaultValue("60s") Duration responseTimeout,
+                         @DefaultValue("90s") Duration callTimeout) {
+    }
+
+    public record RateLimit(@DefaultValue("60") int limitForPeriod,
+                            @DefaultValue("60s") Duration refreshPeriod,
+                            @DefaultValue("60s") Duration acquireTimeout) {
+    }
+
+    public record CircuitBreaker(@DefaultValue("50") float failureRateThreshold,
+                                 @DefaultValue("50") float slowCallRateThreshold,
+                                 @DefaultValue("30s") Duration slowCallDuration,
+                                 @DefaultValue("20") int slidingWindowSize,
+                                 @DefaultValue("10") int minimumNumberOfCalls,
+                                 @DefaultValue("30s") Duration waitDurationInOpenState,
+                                 @DefaultValue("3") int permittedCallsInHalfOpenState) {
+    }
+}
@@ -1,9 +1,43 @@
 package com.fitness.aiservice.config;
 
+import com.fitness.aiservice.model.ReanalysisRequest;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
 
 @Configuration
 @EnableMongoAuditing
+@Slf4j
 public class MongoConfig {
+
+    @Bean
+    public ApplicationRunner mongoIndexInitializer(MongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        // Declares the indexes annotated on our documents; auto-index-creation is off by default
+        return args -> {
+            IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+            for (Class<?> document : List.of(Recommendation.class, RecommendationTemplate.class, ReanalysisRequest.class)) {
+                IndexOperations indexOps = mongoTemplate.indexOps(document);
+                resolver.resolveIndexFor(document).forEach(index -> {
+                    try {
+                        indexOps.ensureIndex(index);
+                    } catch (RuntimeException e) {
+                        // e.g. duplicate activityIds written before the unique index existed; the
+                        // service still runs, but the duplicates need cleaning up before it can be built
+                        log.error("Could not create index {} on {}", index.getIndexKeys(), document.getSimpleName(), e);
+                    }
+                });
+            }
+        };
+    }
 }
@@ -1,15 +1,30 @@
 package com.fitness.aiservice.config;
 
 import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 public class RabbitMQConfig {
     @Value("${rabbitmq.queue.name}")
@@ -21,6 +36,29 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.routing.key}")
     private String routingKey;
 
+    @Value("${rabbitmq.backfill.queue.name}")
+    private String backfillQueue;
+
+    @Value("${rabbitmq.backfill.routing-key}")
+    private String backfillRoutingKey;
+
+    @Value("${rabbitmq.recommendation-events.exchange:fitness.recommendations}")
+    private String recommendationEventsExchange;
+
+    @Value("${rabbitmq.retry.exchange:fitness.retry}")
+    private String retryExchange;
+
+    @Value("${rabbitmq.retry.delays:5s,30s,5m}")
+    private List<Duration> retryDelays;
+
+    public static String retryQueueName(String queue, int tier) {
+        return queue + ".retry." + tier;
+    }
+
+    public static String deadLetterQueueName(String queue) {
+        return queue + ".dlq";
+    }
+
     @Bean
     public Queue activityQueue() {
         // This declares a queue name
@@ -39,6 +77,80 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(activityQueue).to(activityExchange).with(routingKey);
     }
 
+    @Bean
+    public Queue backfillQueue() {
+        return new Queue(backfillQueue, true);
+    }
+
+    @Bean
+    public Binding backfillBinding(Queue backfillQueue, DirectExchange activityExchange) {
+        return BindingBuilder.bind(backfillQueue).to(activityExchange).with(backfillRoutingKey);
+    }
+
+    @Bean
+    public Declarables activityRetryTopology() {
+        // Failed messages are republished to their lane's tier for the attempt. Each tier holds them for its
+        // TTL and then dead-letters them back onto the main exchange with the lane's routing key, so a retried
+        // backfill message stays off the live lane. After the last tier they park in the shared DLQ.
+        DirectExchange retry = new DirectExchange(retryExchange);
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retry);
+        Map<String, String> lanes = Map.of(queue, routingKey, backfillQueue, backfillRoutingKey);
+        lanes.forEach((laneQueue, laneRoutingKey) -> {
+            for (int tier = 1; tier <= retryDelays.size(); tier++) {
+                String name = retryQueueName(laneQueue, tier);
+                Queue retryQueue = QueueBuilder.durable(name)
+                        .ttl((int) retryDelays.get(tier - 1).toMillis())
+                        .deadLetterExchange(exchange)
+                        .deadLetterRoutingKey(laneRoutingKey)
+                        .build();
+                declarables.add(retryQueue);
+                declarables.add(BindingBuilder.bind(retryQueue).to(retry).with(name));
+            }
+        });
+        Queue deadLetterQueue = QueueBuilder.durable(deadLetterQueueName(queue)).build();
+        declarables.add(deadLetterQueue);
+        declarables.add(BindingBuilder.bind(deadLetterQueue).to(retry).with(deadLetterQueue.getName()));
+        return new Declarables(declarables);
+    }
+
+    @Bean
+    public FanoutExchange recommendationEventsExchange() {
+        return new FanoutExchange(recommendationEventsExchange);
+    }
+
+    @Bean
+    public Queue recommendationEventsQueue() {
+        // Exclusive, auto-delete and server-named: one per running instance
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding recommendationEventsBinding(Queue recommendationEventsQueue, FanoutExchange recommendationEventsExchange) {
+        return BindingBuilder.bind(recommendationEventsQueue).to(recommendationEventsExchange);
+    }
+
+    // Container factory for ActivityBatchListener: each consumer receives up to batch-size messages
+    // at once, waiting at most receive-timeout for a batch to fill
+    @Bean
+    @ConditionalOnProperty(name = "ai.listener.batch.enabled", havingValue = "true")
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${ai.listener.batch.size:20}") int batchSize,
+            @Value("${ai.listener.batch.receive-timeout:500ms}") Duration receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(receiveTimeout.toMillis());
+        // A batch can only fill from messages already prefetched
+        factory.setPrefetchCount(batchSize);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         // This converts Java object into Json before sending to queue.
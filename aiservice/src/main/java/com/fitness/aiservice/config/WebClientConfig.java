@@ -0,0 +1,21 @@
+package com.fitness.aiservice.config;
+
+import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+
+@Configuration
+public class WebClientConfig {
+
+    // Resolves the service name via Eureka. The filter is applied to this client only, so the
+    // shared WebClient.Builder still reaches external hosts such as the Gemini API directly.
+    @Bean
+    public WebClient activityServiceWebClient(WebClient.Builder webClientBuilder,
+                                              ReactorLoadBalancerExchangeFilterFunction loadBalancer) {
+        return webClientBuilder
+                .baseUrl("http://ACTIVITY-SERVICE")
+                .filter(loadBalancer)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.fitness.aiservice.controller;
+
+import com.fitness.aiservice.config.RabbitMQConfig;
+import com.fitness.aiservice.service.ActivityRetryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// Operator operations for the activity dead-letter queue. Served as /actuator/dlq on the
+// management port only (management.server.*), never on the application port.
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "dlq")
+public class DeadLetterEndpoint {
+    private final ActivityRetryService retryService;
+    private final AmqpAdmin amqpAdmin;
+
+    @Value("${rabbitmq.queue.name}")
+    private String queue;
+
+    @ReadOperation
+    public Map<String, Object> deadLetterQueue() {
+        String name = RabbitMQConfig.deadLetterQueueName(queue);
+        QueueInformation info = amqpAdmin.getQueueInfo(name);
+        return Map.of("queue", name, "messages", info == null ? 0 : info.getMessageCount());
+    }
+
+    // POST /actuator/dlq, optionally with {"max": n}
+    @WriteOperation
+    public Map<String, Object> replay(@Nullable Integer max) {
+        return Map.of("replayed", retryService.replayDeadLetters(max == null ? 1000 : max));
+    }
+}
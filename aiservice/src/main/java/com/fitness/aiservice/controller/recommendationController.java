@@ -1,25 +1,45 @@
 package com.fitness.aiservice.controller;
 
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationChunk;
+import com.fitness.aiservice.model.RecommendationPage;
+import com.fitness.aiservice.model.RecommendationStreamRequest;
+import com.fitness.aiservice.model.RecommendationSummary;
+import com.fitness.aiservice.service.RecommendationPushService;
 import com.fitness.aiservice.service.RecommendationService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import java.util.List;
+import reactor.core.publisher.Flux;
 
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/api/recommendations")
 public class recommendationController {
     private final RecommendationService recommendationService;
+    private final RecommendationPushService pushService;
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Recommendation>> getUserRecommendation(@PathVariable String userId) {
-        return ResponseEntity.ok(recommendationService.getUserRecommendation(userId));
+    public ResponseEntity<RecommendationPage<Recommendation>> getUserRecommendation(@PathVariable String userId,
+                                                                                   @RequestParam(defaultValue = "20") int limit,
+                                                                                   @RequestParam(required = false) String cursor) {
+        return ResponseEntity.ok(recommendationService.getUserRecommendations(userId, limit, cursor));
+    }
+
+    @GetMapping("/user/{userId}/summary")
+    public ResponseEntity<RecommendationPage<RecommendationSummary>> getUserRecommendationSummaries(@PathVariable String userId,
+                                                                                                   @RequestParam(defaultValue = "20") int limit,
+                                                                                                   @RequestParam(required = false) String cursor) {
+        return ResponseEntity.ok(recommendationService.getUserRecommendationSummaries(userId, limit, cursor));
     }
 
     @GetMapping("/activity/{activityId}")
@@ -27,4 +47,19 @@ public class recommendationController {
         return ResponseEntity.ok(recommendationService.getActivityRecommendation(activityId));
     }
 
+    // Open-ended stream of the user's newly saved recommendations, with periodic heartbeat comments
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Recommendation>> subscribeToRecommendations(@RequestHeader("X-User-ID") String userId) {
+        return pushService.subscribe(userId);
+    }
+
+    // One event per recommendation section as soon as it is generated, then a "complete" event.
+    // Only for the caller's own activities.
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<RecommendationChunk>> streamRecommendation(@RequestBody RecommendationStreamRequest request,
+                                                                           @RequestHeader("X-User-ID") String userId) {
+        return recommendationService.streamRecommendation(request.getActivityId(), userId)
+                .map(chunk -> ServerSentEvent.builder(chunk).event(chunk.getSection()).build());
+    }
+
 }
@@ -0,0 +1,80 @@
+package com.fitness.aiservice.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import lombok.Data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// The JSON the prompt asks the model for; activityId is only present in batched responses.
+// The model does not always keep to the shape, so text fields also accept numbers, objects and arrays,
+// and lists also accept a single entry.
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ActivityAnalysis {
+    @JsonDeserialize(using = LenientText.class)
+    private String activityId;
+    private Analysis analysis;
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    private List<Improvement> improvements;
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    private List<Suggestion> suggestions;
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    @JsonDeserialize(contentUsing = LenientText.class)
+    private List<String> safety;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Analysis {
+        @JsonDeserialize(using = LenientText.class)
+        private String overall;
+        @JsonDeserialize(using = LenientText.class)
+        private String pace;
+        @JsonDeserialize(using = LenientText.class)
+        private String heartRate;
+        @JsonDeserialize(using = LenientText.class)
+        private String calories;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Improvement {
+        @JsonDeserialize(using = LenientText.class)
+        private String area;
+        @JsonDeserialize(using = LenientText.class)
+        private String recommendation;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Suggestion {
+        @JsonDeserialize(using = LenientText.class)
+        private String workout;
+        @JsonDeserialize(using = LenientText.class)
+        private String description;
+    }
+
+    // Scalars as their text; objects and arrays as the text of their values, space-separated
+    public static class LenientText extends JsonDeserializer<String> {
+        @Override
+        public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return textOf(context.readTree(parser));
+        }
+
+        private static String textOf(JsonNode node) {
+            if (node.isValueNode()) return node.asText();
+            List<String> parts = new ArrayList<>();
+            node.elements().forEachRemaining(value -> {
+                if (!value.isNull()) parts.add(textOf(value));
+            });
+            return String.join(" ", parts);
+        }
+    }
+}
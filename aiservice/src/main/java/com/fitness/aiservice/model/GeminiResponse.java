@@ -0,0 +1,47 @@
+package com.fitness.aiservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+import java.util.List;
+
+// The part of a generateContent response we read: candidates[0].content.parts[0].text and token usage
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GeminiResponse {
+    private List<Candidate> candidates;
+    private UsageMetadata usageMetadata;
+
+    public String firstText() {
+        if (candidates == null || candidates.isEmpty()) return null;
+        Content content = candidates.get(0).getContent();
+        if (content == null || content.getParts() == null || content.getParts().isEmpty()) return null;
+        return content.getParts().get(0).getText();
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Candidate {
+        private Content content;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Content {
+        private List<Part> parts;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class UsageMetadata {
+        private Integer promptTokenCount;
+        private Integer candidatesTokenCount;
+        private Integer totalTokenCount;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Part {
+        private String text;
+    }
+}
@@ -0,0 +1,26 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Snapshot of an activity that only got the fallback recommendation, replayed once the LLM recovers
+@Document(collection = "pending_reanalysis")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReanalysisRequest {
+    @Id
+    private String activityId;
+    private Activity activity;
+
+    @Indexed
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,22 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One server-sent event of a streamed recommendation: a finished section, or the complete result
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationChunk {
+    public static final String COMPLETE = "complete";
+
+    private String section;
+    private String text;
+    private List<String> items;
+    private Recommendation recommendation;
+}
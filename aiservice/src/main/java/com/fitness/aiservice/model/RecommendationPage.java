@@ -0,0 +1,16 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationPage<T> {
+    private List<T> items;
+    // Opaque continuation token; null on the last page
+    private String nextCursor;
+}
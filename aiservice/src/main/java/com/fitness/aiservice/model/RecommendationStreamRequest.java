@@ -0,0 +1,8 @@
+package com.fitness.aiservice.model;
+
+import lombok.Data;
+
+@Data
+public class RecommendationStreamRequest {
+    private String activityId;
+}
@@ -0,0 +1,15 @@
+package com.fitness.aiservice.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// List-view projection of a recommendation, without the analysis text
+@Data
+public class RecommendationSummary {
+    private String id;
+    private String activityId;
+    private String activityType;
+    private boolean reanalysisPending;
+    private LocalDateTime createdAt;
+}
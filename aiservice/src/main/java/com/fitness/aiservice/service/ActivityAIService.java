@@ -3,136 +3,282 @@ package com.fitness.aiservice.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityAnalysis;
 import com.fitness.aiservice.model.Recommendation;
-import lombok.RequiredArgsConstructor;
+import com.fitness.aiservice.model.RecommendationChunk;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class ActivityAIService {
-    @Autowired
-    private GeminiService geminiService;
+    private final GeminiService geminiService;
+    private final RecommendationCacheService cacheService;
+    private final ReanalysisService reanalysisService;
+    private final LocalRecommendationEngine localEngine;
+    private final RecommendationRoutingPolicy routingPolicy;
+    private final RecommendationResponseParser responseParser;
+    private final LlmMetrics llmMetrics;
+    private final ObjectMapper objectMapper;
+    private final Counter shortCircuited;
 
-    public Recommendation generateRecommendation(Activity activity) {
-        String prompt = createPromptForActivity(activity);
-        String aiResponse = geminiService.getAnswer(prompt);
+    // Result of the LLM analysis currently running for each activity ID
+    private final Map<String, Mono<Recommendation>> inFlight = new ConcurrentHashMap<>();
 
-//        log.info("RESPONSE FROM AI: {}", aiResponse);
+    // Per-stage latency breakdown of the pipeline, tagged ai.pipeline.stage{stage=...}
+    private final Timer promptTimer;
+    private final Timer llmTimer;
+    private final Timer parseTimer;
+    private final Timer localTimer;
 
-        return processAiResponse(activity, aiResponse);
+    public ActivityAIService(GeminiService geminiService, RecommendationCacheService cacheService,
+                             ReanalysisService reanalysisService, LocalRecommendationEngine localEngine,
+                             RecommendationRoutingPolicy routingPolicy, RecommendationResponseParser responseParser,
+                             LlmMetrics llmMetrics, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.geminiService = geminiService;
+        this.cacheService = cacheService;
+        this.reanalysisService = reanalysisService;
+        this.localEngine = localEngine;
+        this.routingPolicy = routingPolicy;
+        this.responseParser = responseParser;
+        this.llmMetrics = llmMetrics;
+        this.objectMapper = objectMapper;
+        this.shortCircuited = meterRegistry.counter("ai.llm.short-circuited");
+        this.promptTimer = meterRegistry.timer("ai.pipeline.stage", "stage", "prompt");
+        this.llmTimer = meterRegistry.timer("ai.pipeline.stage", "stage", "llm");
+        this.parseTimer = meterRegistry.timer("ai.pipeline.stage", "stage", "parse");
+        this.localTimer = meterRegistry.timer("ai.pipeline.stage", "stage", "local");
     }
 
-    private Recommendation processAiResponse(Activity activity, String aiResponse) {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode rootNode = mapper.readTree(aiResponse);
-
-            JsonNode textNode = rootNode.path("candidates")
-                    .get(0)
-                    .path("content")
-                    .path("parts")
-                    .get(0)
-                    .path("text");
-
-            String jsonContent = textNode.asText()
-                    .replaceAll("```json\\n", "")
-                    .replaceAll("```\\n", "")
-                    .trim();
-
-//            log.info("PARSED RESPONSE FROM AI: {}", jsonContent);
-
-            // Parsing Analysis
-            JsonNode analysisJson = mapper.readTree(jsonContent);
-            JsonNode analysisNode = analysisJson.path("analysis");
-
-            StringBuilder fullAnalysis = new StringBuilder();
-            addAnalysisSection(fullAnalysis, analysisNode, "overall", "Overall: ");
-            addAnalysisSection(fullAnalysis, analysisNode, "pace", "Pace:");
-            addAnalysisSection(fullAnalysis, analysisNode, "heartRate", "HeartRate:");
-            addAnalysisSection(fullAnalysis, analysisNode, "calories", "CaloriesBurned:");
-
-            // Parsing Improvements
-            List<String> improvements = extractImprovement(analysisJson.path("improvements"));
-
-            // Parsing Suggestions
-            List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
-
-            // Parsing Safety
-            List<String> safety = extractSafetyGuidelines(analysisJson.path("safety"));
-
-            return Recommendation.builder()
-                    .activityId(activity.getId())
-                    .userId(activity.getUserId())
-                    .activityType(activity.getType())
-                    .recommendation(fullAnalysis.toString().trim())
-                    .improvements(improvements)
-                    .suggestions(suggestions)
-                    .safety(safety)
-                    .build();
+    public Mono<Recommendation> generateRecommendation(Activity activity) {
+        return Mono.defer(() -> recommendLocally(activity)
+                .map(Mono::just)
+                .orElseGet(() -> analyzeWithLlm(activity)));
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return createDefaultRecommendation(activity);
-        }
+    // Simple activities are answered in-process by the rule engine; empty if the routing policy sends it to the LLM
+    public Optional<Recommendation> recommendLocally(Activity activity) {
+        if (!routingPolicy.routesLocally(activity)) return Optional.empty();
+        return Optional.of(localTimer.record(() -> localEngine.recommend(activity)));
     }
 
-    private List<String> extractImprovement(JsonNode improvementNode) {
-        List<String> improvements = new ArrayList<>();
-        if (improvementNode.isArray()) {
-            improvementNode.forEach(improvement -> {
-                String area = improvement.path("area").asText();
-                String detail = improvement.path("recommendation").asText();
-                improvements.add(String.format("%s %s", area, detail));
-            });
-        }
-        return improvements.isEmpty()
-                ? Collections.singletonList("No specific improvement provided")
-                : improvements;
-    }
-
-    private List<String> extractSuggestions(JsonNode suggestionNode) {
-        List<String> suggestions = new ArrayList<>();
-        if (suggestionNode.isArray()) {
-            suggestionNode.forEach(suggestion -> {
-                String workout = suggestion.path("workout").asText();
-                String description = suggestion.path("description").asText();
-                suggestions.add(String.format("%s %s", workout, description));
-            });
+    // Skips routing, for activities already routed to the LLM
+    public Mono<Recommendation> analyzeWithLlm(Activity activity) {
+        // Near-identical activities reuse an earlier analysis without a network call
+        return Mono.fromCallable(() -> cacheService.lookup(activity))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> cached.map(Mono::just).orElseGet(() -> analyzeOnce(activity)));
+    }
+
+    // At most one LLM call per activity at a time: a client streaming an activity the listener is already
+    // analyzing (or the other way round) waits for that call instead of paying for a second one
+    private Mono<Recommendation> analyzeOnce(Activity activity) {
+        return Mono.defer(() -> {
+            Sinks.One<Recommendation> result = Sinks.one();
+            Mono<Recommendation> shared = result.asMono();
+            Mono<Recommendation> existing = inFlight.putIfAbsent(activity.getId(), shared);
+            // Empty when the other call was abandoned, e.g. a stream whose client went away
+            if (existing != null) return existing.switchIfEmpty(Mono.defer(() -> analyzeOnce(activity)));
+            return analyze(activity)
+                    .doOnNext(result::tryEmitValue)
+                    .doOnError(result::tryEmitError)
+                    .doFinally(signal -> {
+                        result.tryEmitEmpty();
+                        inFlight.remove(activity.getId(), shared);
+                    });
+        });
+    }
+
+    private Mono<Recommendation> analyze(Activity activity) {
+        if (!geminiService.isCallPermitted()) return shortCircuit(activity);
+
+        return Mono.defer(() -> {
+            String prompt = promptTimer.record(() -> createPromptForActivity(activity));
+            Timer.Sample llmSample = Timer.start();
+            return geminiService.getAnswer(prompt)
+                    .doFinally(signal -> llmSample.stop(llmTimer));
+        }).flatMap(aiResponse -> {
+            log.debug("Response from AI for activity {}: {}", activity.getId(), aiResponse);
+
+            Recommendation recommendation = parseTimer.record(() -> processAiResponse(activity, aiResponse));
+            if (recommendation == null) return Mono.just(createDefaultRecommendation(activity, "parse_failure"));
+
+            // Only real analyses are cached, never the default fallback
+            return Mono.fromRunnable(() -> cacheService.store(activity, recommendation))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .thenReturn(recommendation);
+        }).onErrorResume(CallNotPermittedException.class, e -> shortCircuit(activity));
+    }
+
+    // Emits each recommendation section as soon as the streamed completion contains it,
+    // followed by a "complete" chunk carrying the assembled recommendation
+    public Flux<RecommendationChunk> streamRecommendation(Activity activity) {
+        return Flux.defer(() -> recommendLocally(activity)
+                .map(this::toChunks)
+                .orElseGet(() -> Mono.fromCallable(() -> cacheService.lookup(activity))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMapMany(cached -> cached
+                                .map(this::toChunks)
+                                .orElseGet(() -> geminiService.isCallPermitted()
+                                        ? streamOnce(activity)
+                                        : shortCircuit(activity).flatMapMany(this::toChunks)))));
+    }
+
+    // Streaming side of analyzeOnce: attaches to a running analysis of the same activity, or registers
+    // this stream's result so the listener can reuse it
+    private Flux<RecommendationChunk> streamOnce(Activity activity) {
+        return Flux.defer(() -> {
+            Sinks.One<Recommendation> result = Sinks.one();
+            Mono<Recommendation> shared = result.asMono();
+            Mono<Recommendation> existing = inFlight.putIfAbsent(activity.getId(), shared);
+            if (existing != null) {
+                return existing
+                        .flatMapMany(this::toChunks)
+                        .switchIfEmpty(Flux.defer(() -> streamOnce(activity)))
+                        .onErrorResume(e -> {
+                            log.warn("Shared analysis failed for activity {}", activity.getId(), e);
+                            return Flux.just(completeChunk(createDefaultRecommendation(activity, "stream_error")));
+                        });
+            }
+            // Fallbacks are not shared: a listener attached to a failed stream runs its own call
+            return analyzeStreaming(activity, result)
+                    .doFinally(signal -> {
+                        result.tryEmitEmpty();
+                        inFlight.remove(activity.getId(), shared);
+                    });
+        });
+    }
+
+    private Flux<RecommendationChunk> analyzeStreaming(Activity activity, Sinks.One<Recommendation> result) {
+        return Flux.using(
+                () -> new RecommendationStreamParser(objectMapper),
+                parser -> geminiService.streamAnswer(createPromptForActivity(activity))
+                        .concatMapIterable(text -> {
+                            try {
+                                return parser.feed(text);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .mapNotNull(section -> {
+                            try {
+                                return toChunk(section.name(), section.value());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        })
+                        .concatWith(Mono.defer(() -> completeStreaming(activity, parser, result))),
+                parser -> {
+                    try {
+                        parser.close();
+                    } catch (IOException e) {
+                        log.debug("Closing stream parser failed", e);
+                    }
+                })
+                .onErrorResume(e -> {
+                    if (e instanceof CallNotPermittedException) return shortCircuit(activity).flatMapMany(this::toChunks);
+                    log.warn("Streaming analysis failed for activity {}", activity.getId(), e);
+                    return Flux.just(completeChunk(createDefaultRecommendation(activity, "stream_error")));
+                });
+    }
+
+    private Mono<RecommendationChunk> completeStreaming(Activity activity, RecommendationStreamParser parser,
+                                                        Sinks.One<Recommendation> result) {
+        if (!parser.isComplete()) {
+            llmMetrics.parseFailure("stream");
+            return Mono.just(completeChunk(createDefaultRecommendation(activity, "parse_failure")));
         }
-        return suggestions.isEmpty()
-                ? Collections.singletonList("No specific suggestion provided")
-                : suggestions;
+        return Mono.fromCallable(() -> {
+                    Recommendation recommendation = responseParser.toRecommendation(activity, responseParser.fromTree(parser.result()));
+                    cacheService.store(activity, recommendation);
+                    result.tryEmitValue(recommendation);
+                    return completeChunk(recommendation);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Flux<RecommendationChunk> toChunks(Recommendation recommendation) {
+        return Flux.just(
+                RecommendationChunk.builder().section("analysis").text(recommendation.getRecommendation()).build(),
+                RecommendationChunk.builder().section("improvements").items(recommendation.getImprovements()).build(),
+                RecommendationChunk.builder().section("suggestions").items(recommendation.getSuggestions()).build(),
+                RecommendationChunk.builder().section("safety").items(recommendation.getSafety()).build(),
+                completeChunk(recommendation));
+    }
+
+    private RecommendationChunk toChunk(String section, JsonNode value) throws IOException {
+        ActivityAnalysis partial = responseParser.fromTree(objectMapper.createObjectNode().set(section, value));
+        return switch (section) {
+            case "analysis" -> RecommendationChunk.builder().section(section).text(responseParser.formatAnalysis(partial.getAnalysis())).build();
+            case "improvements" -> RecommendationChunk.builder().section(section).items(responseParser.formatImprovements(partial.getImprovements())).build();
+            case "suggestions" -> RecommendationChunk.builder().section(section).items(responseParser.formatSuggestions(partial.getSuggestions())).build();
+            case "safety" -> RecommendationChunk.builder().section(section).items(responseParser.formatSafety(partial.getSafety())).build();
+            default -> null;
+        };
+    }
+
+    private RecommendationChunk completeChunk(Recommendation recommendation) {
+        return RecommendationChunk.builder().section(RecommendationChunk.COMPLETE).recommendation(recommendation).build();
+    }
+
+    // Answers immediately with the fallback instead of waiting out a timeout against a failing LLM
+    private Mono<Recommendation> shortCircuit(Activity activity) {
+        shortCircuited.increment();
+        Recommendation fallback = createDefaultRecommendation(activity, "short_circuit");
+        fallback.setReanalysisPending(true);
+        return Mono.fromRunnable(() -> reanalysisService.flag(activity))
+                .subscribeOn(Schedulers.boundedElastic())
+                .thenReturn(fallback);
     }
 
-    private List<String> extractSafetyGuidelines(JsonNode safetyNode) {
-        List<String> safety = new ArrayList<>();
-        if (safetyNode.isArray()){
-            safetyNode.forEach(item -> {
-                safety.add(item.asText());
-            });
+    private Recommendation processAiResponse(Activity activity, String aiResponse) {
+        try {
+            return responseParser.parse(activity, aiResponse);
+        } catch (Exception e) {
+            log.warn("Unparseable AI response for activity {}", activity.getId(), e);
+            llmMetrics.parseFailure("single");
+            return null;
         }
-        return safety.isEmpty()
-                ? Collections.singletonList("Follow general safety guidelines.")
-                : safety;
     }
 
-    private void addAnalysisSection(StringBuilder fullAnalysis, JsonNode analysisNode, String key, String prefix) {
-        if (!analysisNode.path(key).isMissingNode()) {
-            fullAnalysis.append(prefix)
-                    .append(analysisNode.path(key).asText())
-                    .append("\n\n");
+    // Splits a combined batch response back into per-activity recommendations, keyed by activity ID.
+    // Activities missing from the response are left out so the caller can fall back for them.
+    public Map<String, Recommendation> processBatchResponse(List<Activity> activities, String aiResponse) throws Exception {
+        Map<String, Activity> activitiesById = new HashMap<>();
+        activities.forEach(activity -> activitiesById.put(activity.getId(), activity));
+
+        Map<String, Recommendation> recommendations = new HashMap<>();
+        for (ActivityAnalysis analysis : responseParser.parseBatch(aiResponse)) {
+            Activity activity = activitiesById.get(analysis.getActivityId());
+            if (activity == null) continue;
+            Recommendation recommendation = responseParser.toRecommendation(activity, analysis);
+            recommendations.put(activity.getId(), recommendation);
+            cacheService.store(activity, recommendation);
         }
+        return recommendations;
     }
 
-    private Recommendation createDefaultRecommendation(Activity activity) {
+    private Recommendation createDefaultRecommendation(Activity activity, String reason) {
+        llmMetrics.fallback(reason);
         return Recommendation.builder()
                 .activityId(activity.getId())
                 .userId(activity.getUserId())
@@ -194,4 +340,50 @@ public class ActivityAIService {
                 activity.getAdditionalMetrics()
         );
     }
+
+    public String createBatchPromptForActivities(List<Activity> activities) {
+        StringBuilder prompt = new StringBuilder("""
+                Analyze each of the following fitness activities and provide a detailed recommendation for every one.
+                Respond with a JSON array only, containing exactly one element per activity in the following EXACT format:
+                [
+                  {
+                    "activityId": "ID of the analyzed activity",
+                    "analysis":{
+                    "overall": "Overall analysis here",
+                    "pace": "Pace analysis here",
+                    "heartRate": "HeartRate analysis here",
+                    "caloriesBurned": "Calories analysis here"
+                    },
+                    "improvements": [
+                      {
+                      "area": "Area name",
+                      "recommendation": "Detailed recommendation"
+                      }
+                    ],
+                    "suggestions": [
+                      {
+                        "workout": "Workout name",
+                        "description": "Detailed workout description"
+                      }
+                    ],
+                    "safety": [
+                      "Safety point 1",
+                      "Safety point 2"
+                    ]
+                  }
+                ]
+
+                Analyze these activities:
+                """);
+        for (Activity activity : activities) {
+            prompt.append("Activity ID: ").append(activity.getId())
+                    .append("\nActivity Type: ").append(activity.getType())
+                    .append("\nDuration: ").append(activity.getDuration()).append(" minutes")
+                    .append("\nCalories Burned: ").append(activity.getCaloriesBurned())
+                    .append("\nAdditional Metrics: ").append(activity.getAdditionalMetrics())
+                    .append("\n\n");
+        }
+        prompt.append("Ensure the response is a JSON array following the EXACT format shown above, keyed by Activity ID.");
+        return prompt.toString();
+    }
 }
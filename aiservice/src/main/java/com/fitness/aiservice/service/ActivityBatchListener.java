@@ -0,0 +1,166 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Batch mode for both lanes, replacing ActivityMessageListener when ai.listener.batch.enabled is true.
+// Each consumer takes up to ai.listener.batch.size messages, analyzes them concurrently, saves the
+// results with one bulk write and acks the batch with one multiple-ack when nothing failed.
+@Service
+@Slf4j
+@ConditionalOnProperty(name = "ai.listener.batch.enabled", havingValue = "true")
+public class ActivityBatchListener {
+    private final ActivityAIService aiService;
+    private final RecommendationBatcher batcher;
+    private final RecommendationService recommendationService;
+    private final ActivityRetryService retryService;
+    private final RecommendationPushService pushService;
+    private final Timer bulkSaveTimer;
+    private final MeterRegistry meterRegistry;
+
+    public ActivityBatchListener(ActivityAIService aiService, RecommendationBatcher batcher,
+                                 RecommendationService recommendationService, ActivityRetryService retryService,
+                                 RecommendationPushService pushService, MeterRegistry meterRegistry) {
+        this.aiService = aiService;
+        this.batcher = batcher;
+        this.recommendationService = recommendationService;
+        this.retryService = retryService;
+        this.pushService = pushService;
+        this.bulkSaveTimer = meterRegistry.timer("ai.pipeline.stage", "stage", "bulk_save");
+        this.meterRegistry = meterRegistry;
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.name}", containerFactory = "batchListenerContainerFactory")
+    public void processActivities(List<Message<Activity>> messages, Channel channel) throws IOException {
+        processBatch(messages, channel, "live");
+    }
+
+    @RabbitListener(queues = "${rabbitmq.backfill.queue.name}", containerFactory = "batchListenerContainerFactory",
+            concurrency = "${rabbitmq.backfill.concurrency:1-2}")
+    public void processBackfillActivities(List<Message<Activity>> messages, Channel channel) throws IOException {
+        processBatch(messages, channel, "backfill");
+    }
+
+    // Runs on the consumer thread, which has nothing else to do until the batch is acked
+    private void processBatch(List<Message<Activity>> messages, Channel channel, String lane) throws IOException {
+        log.info("Received {} activities for processing ({})", messages.size(), lane);
+        DistributionSummary.builder("ai.listener.batch.size")
+                .description("Messages consumed per listener batch")
+                .tag("lane", lane)
+                .register(meterRegistry)
+                .record(messages.size());
+        Timer.Sample processing = Timer.start();
+        try {
+            List<Outcome> outcomes = Flux.fromIterable(messages)
+                    .doOnNext(message -> recordQueueLatency(message, lane))
+                    // With ai.batch.enabled the whole listener batch also shares LLM requests
+                    .flatMap(message -> generate(message.getPayload())
+                            // Every message must come out with an outcome, or the multiple-ack would drop it silently
+                            .switchIfEmpty(Mono.error(() -> new IllegalStateException(
+                                    "No recommendation generated for activity " + message.getPayload().getId())))
+                            .map(recommendation -> new Outcome(message, recommendation, null))
+                            .onErrorResume(e -> Mono.just(new Outcome(message, null, e))))
+                    .collectList()
+                    .block();
+
+            List<Recommendation> generated = outcomes.stream()
+                    .map(Outcome::recommendation)
+                    .filter(recommendation -> recommendation != null)
+                    .toList();
+            Set<Recommendation> unsaved = Collections.newSetFromMap(new IdentityHashMap<>());
+            try {
+                unsaved.addAll(bulkSaveTimer.record(() -> recommendationService.saveAllForActivities(generated)));
+            } catch (Exception e) {
+                log.warn("Bulk save of {} recommendations failed", generated.size(), e);
+                unsaved.addAll(generated);
+            }
+
+            List<Long> nacks = new ArrayList<>();
+            for (Outcome outcome : outcomes) {
+                Recommendation recommendation = outcome.recommendation();
+                if (recommendation != null && !unsaved.contains(recommendation)) {
+                    // Lets a client waiting on GET /api/recommendations/events stop polling
+                    pushService.publish(recommendation);
+                    continue;
+                }
+                Throwable error = outcome.error() != null ? outcome.error()
+                        : new IllegalStateException("Recommendation for activity " + recommendation.getActivityId() + " was not saved");
+                if (!handOffToRetry(outcome.message(), error, lane)) nacks.add(deliveryTag(outcome.message()));
+            }
+
+            if (nacks.isEmpty()) {
+                // Tags increase per channel, so one multiple-ack covers the whole batch
+                channel.basicAck(messages.stream().mapToLong(this::deliveryTag).max().orElseThrow(), true);
+            } else {
+                // Only messages that could not reach a retry tier go back to the queue
+                for (Message<Activity> message : messages) {
+                    long tag = deliveryTag(message);
+                    if (nacks.contains(tag)) channel.basicNack(tag, false, true);
+                    else channel.basicAck(tag, false);
+                }
+            }
+        } finally {
+            processing.stop(laneTimer("ai.processing.latency", lane));
+        }
+    }
+
+    private Mono<Recommendation> generate(Activity activity) {
+        return batcher.isEnabled()
+                ? batcher.submit(activity)
+                : aiService.generateRecommendation(activity);
+    }
+
+    private boolean handOffToRetry(Message<Activity> message, Throwable error, String lane) {
+        Integer attempt = message.getHeaders().get(ActivityRetryService.ATTEMPT_HEADER, Integer.class);
+        try {
+            retryService.scheduleRetry(message.getPayload(), attempt == null ? 0 : attempt, error, lane).block();
+            return true;
+        } catch (Exception e) {
+            log.error("Could not schedule retry for activity {}", message.getPayload().getId(), e);
+            return false;
+        }
+    }
+
+    // Same metric as the single-message listener; retried messages include their backoff and are left out
+    private void recordQueueLatency(Message<Activity> message, String lane) {
+        Date publishedAt = message.getHeaders().get(AmqpHeaders.TIMESTAMP, Date.class);
+        if (publishedAt != null && message.getHeaders().get(ActivityRetryService.ATTEMPT_HEADER) == null) {
+            laneTimer("ai.queue.latency", lane).record(Duration.between(publishedAt.toInstant(), new Date().toInstant()));
+        }
+    }
+
+    private long deliveryTag(Message<Activity> message) {
+        return message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+    }
+
+    private Timer laneTimer(String name, String lane) {
+        return Timer.builder(name)
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private record Outcome(Message<Activity> message, Recommendation recommendation, Throwable error) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+@Service
+public class ActivityLookupService {
+
+    private final WebClient activityServiceWebClient;
+
+    public ActivityLookupService(WebClient activityServiceWebClient) {
+        this.activityServiceWebClient = activityServiceWebClient;
+    }
+
+    // Loads the stored activity, so callers analyze what was tracked rather than what a client sent
+    public Mono<Activity> getOwnedActivity(String activityId, String userId) {
+        return activityServiceWebClient.get()
+                .uri("/api/activities/{activityId}", activityId)
+                .retrieve()
+                .bodyToMono(Activity.class)
+                .onErrorMap(WebClientResponseException.NotFound.class,
+                        e -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Activity not found: " + activityId))
+                .filter(activity -> userId.equals(activity.getUserId()))
+                .switchIfEmpty(Mono.error(new ResponseStatusException(HttpStatus.FORBIDDEN,
+                        "Activity " + activityId + " does not belong to the caller")));
+    }
+}
@@ -2,26 +2,93 @@ package com.fitness.aiservice.service;
 
 import com.fitness.aiservice.model.Activity;
 import com.fitness.aiservice.model.Recommendation;
-import com.fitness.aiservice.repository.RecommendationRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Date;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class ActivityMessageListener {
+    static final String SINGLE_MODE = "#{'${ai.listener.batch.enabled:false}' != 'true'}";
+
     private final ActivityAIService aiService;
-    private final RecommendationRepository repository;
+    private final RecommendationBatcher batcher;
+    private final RecommendationService recommendationService;
+    private final ActivityRetryService retryService;
+    private final RecommendationPushService pushService;
+    private final Timer saveTimer;
+    private final MeterRegistry meterRegistry;
+
+    public ActivityMessageListener(ActivityAIService aiService, RecommendationBatcher batcher,
+                                   RecommendationService recommendationService, ActivityRetryService retryService,
+                                   RecommendationPushService pushService, MeterRegistry meterRegistry) {
+        this.aiService = aiService;
+        this.batcher = batcher;
+        this.recommendationService = recommendationService;
+        this.retryService = retryService;
+        this.pushService = pushService;
+        this.saveTimer = meterRegistry.timer("ai.pipeline.stage", "stage", "save");
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Concurrency and prefetch come from spring.rabbitmq.listener.simple.*. The container acks
+    // when the returned Mono completes, i.e. only after the recommendation is saved or the
+    // message has been handed to the next retry tier. Not started when ActivityBatchListener
+    // consumes the lanes instead.
+    @RabbitListener(queues = "${rabbitmq.queue.name}", autoStartup = SINGLE_MODE)
+    public Mono<Void> processActivity(Activity activity,
+                                      @Header(name = ActivityRetryService.ATTEMPT_HEADER, required = false) Integer attempt,
+                                      @Header(name = AmqpHeaders.TIMESTAMP, required = false) Date publishedAt) {
+        return process(activity, attempt, publishedAt, "live");
+    }
+
+    // Bulk imports and re-analysis. Fewer consumers than the live lane, so backfill holds only a
+    // small share of the LLM in-flight slots and live submissions keep their latency.
+    @RabbitListener(queues = "${rabbitmq.backfill.queue.name}", concurrency = "${rabbitmq.backfill.concurrency:1-2}",
+            autoStartup = SINGLE_MODE)
+    public Mono<Void> processBackfillActivity(Activity activity,
+                                              @Header(name = ActivityRetryService.ATTEMPT_HEADER, required = false) Integer attempt,
+                                              @Header(name = AmqpHeaders.TIMESTAMP, required = false) Date publishedAt) {
+        return process(activity, attempt, publishedAt, "backfill");
+    }
 
-    @RabbitListener(queues = "activity.queue")
-    public void processActivity(Activity activity) {
-        log.info("Received activity for processing: {}", activity.getId());
+    private Mono<Void> process(Activity activity, Integer attempt, Date publishedAt, String lane) {
+        log.info("Received activity for processing: {} ({})", activity.getId(), lane);
+        // Time spent waiting in the lane's queue; retried messages also include their backoff, so they are left out
+        if (publishedAt != null && attempt == null) {
+            laneTimer("ai.queue.latency", lane).record(Duration.between(publishedAt.toInstant(), new Date().toInstant()));
+        }
+        Timer.Sample processing = Timer.start();
 
-        log.info("Generated Recommendations: {}", aiService.generateRecommendation(activity));
+        Mono<Recommendation> recommendation = batcher.isEnabled()
+                ? batcher.submit(activity)
+                : aiService.generateRecommendation(activity);
+
+        return recommendation
+                .doOnNext(generated -> log.info("Generated Recommendations for activity: {}", activity.getId()))
+                // Mongo writes are blocking, so the save runs off the Netty event loop
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(generated -> saveTimer.record(() -> recommendationService.saveForActivity(generated)))
+                // Lets a client waiting on GET /api/recommendations/events stop polling
+                .doOnNext(pushService::publish)
+                .then()
+                .onErrorResume(e -> retryService.scheduleRetry(activity, attempt == null ? 0 : attempt, e, lane))
+                .doFinally(signal -> processing.stop(laneTimer("ai.processing.latency", lane)));
+    }
 
-        Recommendation recommendation = aiService.generateRecommendation(activity);
-        repository.save(recommendation);
+    private Timer laneTimer(String name, String lane) {
+        return Timer.builder(name)
+                .tag("lane", lane)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
     }
 }
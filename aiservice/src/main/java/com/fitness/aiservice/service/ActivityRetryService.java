@@ -0,0 +1,164 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.RabbitMQConfig;
+import com.fitness.aiservice.model.Activity;
+import com.rabbitmq.client.GetResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Moves failed activity messages through the delayed retry tiers and into the DLQ, and replays the DLQ on demand
+@Service
+@Slf4j
+public class ActivityRetryService {
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+    public static final String ERROR_HEADER = "x-last-error";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private final Counter replayed;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+
+    @Value("${rabbitmq.queue.name}")
+    private String queue;
+
+    @Value("${rabbitmq.backfill.queue.name}")
+    private String backfillQueue;
+
+    // Bulk DLQ replays take the backfill lane
+    @Value("${rabbitmq.backfill.routing-key}")
+    private String backfillRoutingKey;
+
+    @Value("${rabbitmq.retry.exchange:fitness.retry}")
+    private String retryExchange;
+
+    @Value("${rabbitmq.retry.delays:5s,30s,5m}")
+    private List<Duration> retryDelays;
+
+    @Value("${rabbitmq.retry.confirm-timeout:5s}")
+    private Duration confirmTimeout;
+
+    public ActivityRetryService(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.retried = meterRegistry.counter("ai.retry", "outcome", "retried");
+        this.deadLettered = meterRegistry.counter("ai.retry", "outcome", "dead_lettered");
+        this.replayed = meterRegistry.counter("ai.retry", "outcome", "replayed");
+    }
+
+    // Completes once the broker has confirmed the message is parked, so the caller can ack the
+    // original delivery. Retries go through the lane's own tiers and come back on the same lane.
+    public Mono<Void> scheduleRetry(Activity activity, int attempt, Throwable error, String lane) {
+        int next = attempt + 1;
+        boolean exhausted = next > retryDelays.size();
+        String target = exhausted
+                ? RabbitMQConfig.deadLetterQueueName(queue)
+                : RabbitMQConfig.retryQueueName("backfill".equals(lane) ? backfillQueue : queue, next);
+
+        return Mono.fromCallable(() -> {
+                    CorrelationData correlation = new CorrelationData(activity.getId());
+                    rabbitTemplate.convertAndSend(retryExchange, target, activity, message -> {
+                        message.getMessageProperties().setHeader(ATTEMPT_HEADER, next);
+                        message.getMessageProperties().setHeader(ERROR_HEADER, describe(error));
+                        return message;
+                    }, correlation);
+                    return correlation;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(correlation -> Mono.fromFuture(correlation.getFuture())
+                        .timeout(confirmTimeout)
+                        .flatMap(confirm -> {
+                            // Returned means no queue was bound for the target, so nothing was parked
+                            if (confirm.isAck() && correlation.getReturned() == null) return Mono.empty();
+                            return Mono.error(new AmqpException("Retry publish for activity " + activity.getId()
+                                    + " to " + target + " was not confirmed: "
+                                    + (confirm.isAck() ? "returned unroutable" : confirm.getReason())));
+                        }))
+                .doOnSuccess(ignored -> {
+                    if (exhausted) {
+                        deadLettered.increment();
+                        log.error("Activity {} failed {} times, moved to {}", activity.getId(), next, target, error);
+                    } else {
+                        retried.increment();
+                        log.warn("Activity {} failed (attempt {}), retrying in {}", activity.getId(), next,
+                                retryDelays.get(next - 1), error);
+                    }
+                })
+                .then();
+    }
+
+    // Moves up to max messages from the DLQ to the backfill lane with a fresh attempt count.
+    // Each message is acked on the DLQ only once the broker has confirmed and routed its copy;
+    // otherwise it is requeued on the DLQ and the replay stops there.
+    public int replayDeadLetters(int max) {
+        String deadLetterQueue = RabbitMQConfig.deadLetterQueueName(queue);
+        Integer count = rabbitTemplate.execute(channel -> {
+            int moved = 0;
+            GetResponse response;
+            while (moved < max && (response = channel.basicGet(deadLetterQueue, false)) != null) {
+                long deliveryTag = response.getEnvelope().getDeliveryTag();
+                MessageProperties properties = propertiesConverter.toMessageProperties(
+                        response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+                properties.removeHeader(ATTEMPT_HEADER);
+                properties.removeHeader(ERROR_HEADER);
+                properties.removeHeader("x-death");
+                properties.setTimestamp(new Date());
+
+                CorrelationData correlation = new CorrelationData("replay-" + deliveryTag);
+                rabbitTemplate.send(exchange, backfillRoutingKey, new Message(response.getBody(), properties), correlation);
+                String failure = awaitConfirm(correlation);
+                if (failure != null) {
+                    channel.basicNack(deliveryTag, false, true);
+                    log.error("Replay from {} stopped after {} messages: publish was not confirmed: {}",
+                            deadLetterQueue, moved, failure);
+                    break;
+                }
+                channel.basicAck(deliveryTag, false);
+                moved++;
+            }
+            return moved;
+        });
+        int moved = count == null ? 0 : count;
+        replayed.increment(moved);
+        log.info("Replayed {} messages from {}", moved, deadLetterQueue);
+        return moved;
+    }
+
+    // Null once the broker has acked and routed the message, otherwise why it was not
+    private String awaitConfirm(CorrelationData correlation) throws InterruptedException {
+        try {
+            CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!confirm.isAck()) return confirm.getReason();
+            return correlation.getReturned() == null ? null : "returned unroutable";
+        } catch (ExecutionException | TimeoutException e) {
+            return e.toString();
+        }
+    }
+
+    private String describe(Throwable error) {
+        String description = error.getClass().getSimpleName() + ": " + error.getMessage();
+        return description.length() > 500 ? description.substring(0, 500) : description;
+    }
+}
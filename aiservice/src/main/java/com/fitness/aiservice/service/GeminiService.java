@@ -1,29 +1,203 @@
 package com.fitness.aiservice.service;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fitness.aiservice.config.GeminiProperties;
+import com.fitness.aiservice.model.GeminiResponse;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedRateLimiterMetrics;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
+@Slf4j
 public class GeminiService {
 
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {};
+
     private final WebClient webClient;
+    private final ObjectReader streamEventReader;
+    private final LlmMetrics llmMetrics;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final GeminiProperties.Api api;
+    private final Duration callTimeout;
+
+    public GeminiService(WebClient.Builder webClient,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         LlmMetrics llmMetrics,
+                         GeminiProperties properties) {
+        GeminiProperties.Client client = properties.client();
+        this.api = properties.api();
+        this.callTimeout = client.callTimeout();
 
-    @Value("${gemini.api.url}")
-    private String geminiApiUrl;
+        // One request per connection, so max-in-flight connections cap concurrent LLM calls.
+        // Callers above the cap wait in the pool's pending queue without holding a thread.
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("gemini")
+                .maxConnections(client.maxInFlight())
+                .pendingAcquireMaxCount(client.maxPending())
+                .pendingAcquireTimeout(client.pendingAcquireTimeout())
+                .maxIdleTime(Duration.ofSeconds(30))
+                .evictInBackground(Duration.ofSeconds(60))
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) client.connectTimeout().toMillis())
+                .responseTimeout(client.responseTimeout());
+        this.webClient = webClient
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        this.streamEventReader = objectMapper.readerFor(GeminiResponse.class);
+        this.llmMetrics = llmMetrics;
 
-    @Value("${gemini.api.key}")
-    private String geminiApiKey;
+        // Token bucket matched to the Gemini quota; waiting for a permit delays subscription, it does not block
+        GeminiProperties.RateLimit rateLimit = properties.rateLimit();
+        RateLimiterRegistry rateLimiterRegistry = RateLimiterRegistry.of(RateLimiterConfig.custom()
+                .limitForPeriod(rateLimit.limitForPeriod())
+                .limitRefreshPeriod(rateLimit.refreshPeriod())
+                .timeoutDuration(rateLimit.acquireTimeout())
+                .build());
+        this.rateLimiter = rateLimiterRegistry.rateLimiter("gemini");
+        TaggedRateLimiterMetrics.ofRateLimiterRegistry(rateLimiterRegistry).bindTo(meterRegistry);
 
+        // Opens on error rate or slow-call rate; exposes resilience4j.circuitbreaker.* metrics
+        GeminiProperties.CircuitBreaker breaker = properties.circuitBreaker();
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(breaker.failureRateThreshold())
+                .slowCallRateThreshold(breaker.slowCallRateThreshold())
+                .slowCallDurationThreshold(breaker.slowCallDuration())
+                .slidingWindowSize(breaker.slidingWindowSize())
+                .minimumNumberOfCalls(breaker.minimumNumberOfCalls())
+                .waitDurationInOpenState(breaker.waitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(breaker.permittedCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("gemini");
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            log.warn("Gemini circuit breaker {}", event.getStateTransition());
+            meterRegistry.counter("ai.llm.circuit.transitions",
+                    "from", event.getStateTransition().getFromState().name(),
+                    "to", event.getStateTransition().getToState().name()).increment();
+        });
 
-    public GeminiService(WebClient.Builder webClient) {
-        this.webClient = webClient.build();
+        Gauge.builder("ai.llm.in-flight", inFlight, AtomicInteger::get)
+                .description("Gemini calls currently in flight")
+                .register(meterRegistry);
     }
 
-    public String getAnswer(String prompt) {
-        Map<String, Object> requestBody = Map.of(
+    // False while the breaker is open, so callers can fall back before building a prompt
+    public boolean isCallPermitted() {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        return state != CircuitBreaker.State.OPEN && state != CircuitBreaker.State.FORCED_OPEN;
+    }
+
+    public void onCircuitClosed(Runnable callback) {
+        circuitBreaker.getEventPublisher().onStateTransition(event -> {
+            if (event.getStateTransition().getToState() == CircuitBreaker.State.CLOSED) callback.run();
+        });
+    }
+
+    public Mono<String> getAnswer(String prompt) {
+        Mono<String> call = webClient.post()
+                .uri(api.url() + api.key())
+                .header("Content-Type", "application/json")
+                .bodyValue(requestBody(prompt))
+                .retrieve()
+                .bodyToMono(String.class)
+                .doOnSubscribe(subscription -> {
+                    inFlight.incrementAndGet();
+                    llmMetrics.recordPrompt(prompt);
+                })
+                .doOnNext(llmMetrics::recordResponse)
+                .doFinally(signal -> inFlight.decrementAndGet())
+                // Deadline covers waiting for a pooled connection as well as the response
+                .timeout(callTimeout);
+
+        // Timed and guarded inside the rate limiter, so waiting for a permit is neither
+        // part of ai.llm.latency nor a slow call for the breaker
+        return llmMetrics.timeCall("generate", call)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(RateLimiterOperator.of(rateLimiter));
+    }
+
+    // Emits the completion text chunk by chunk as Gemini generates it
+    public Flux<String> streamAnswer(String prompt) {
+        if (api.streamUrl() == null || api.streamUrl().isBlank()) {
+            return Flux.error(new IllegalStateException("gemini.api.stream-url is not configured"));
+        }
+
+        Flux<String> call = Flux.defer(() -> {
+            // Every event carries the running usage totals; the last one is the final count
+            AtomicReference<GeminiResponse.UsageMetadata> usage = new AtomicReference<>();
+            AtomicLong responseBytes = new AtomicLong();
+            return webClient.post()
+                    .uri(api.streamUrl() + api.key())
+                    .header("Content-Type", "application/json")
+                    .bodyValue(requestBody(prompt))
+                    .retrieve()
+                    .bodyToFlux(SSE_TYPE)
+                    .mapNotNull(ServerSentEvent::data)
+                    .map(event -> {
+                        // Same unit as the non-streamed path: UTF-8 bytes, not UTF-16 chars
+                        responseBytes.addAndGet(event.getBytes(StandardCharsets.UTF_8).length);
+                        GeminiResponse response = readStreamEvent(event);
+                        if (response.getUsageMetadata() != null) usage.set(response.getUsageMetadata());
+                        String text = response.firstText();
+                        return text == null ? "" : text;
+                    })
+                    .doOnSubscribe(subscription -> {
+                        inFlight.incrementAndGet();
+                        llmMetrics.recordPrompt(prompt);
+                    })
+                    .doOnComplete(() -> {
+                        llmMetrics.recordUsage(usage.get());
+                        llmMetrics.recordResponseSize(responseBytes.get());
+                    })
+                    .doFinally(signal -> inFlight.decrementAndGet())
+                    // Applies per chunk: the stream fails if Gemini goes quiet for longer than this
+                    .timeout(callTimeout);
+        });
+
+        return llmMetrics.timeStream("stream", call)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(RateLimiterOperator.of(rateLimiter));
+    }
+
+    private Map<String, Object> requestBody(String prompt) {
+        return Map.of(
                 "contents", new Object[] {
                         Map.of(
                                 "parts", new Object[]{
@@ -32,13 +206,13 @@ public class GeminiService {
                         )
                 }
         );
+    }
 
-        return webClient.post()
-                .uri(geminiApiUrl + geminiApiKey)
-                .header("Content-Type", "application/json")
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToMono(String.class)
-                .block();
+    private GeminiResponse readStreamEvent(String event) {
+        try {
+            return streamEventReader.readValue(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unparseable Gemini stream event", e);
+        }
     }
 }
@@ -0,0 +1,113 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.GeminiResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeoutException;
+
+// Meters for the Gemini call path, all under ai.llm.* (plus ai.recommendation.fallback):
+// call latency by operation and outcome, prompt/response sizes, token usage from usageMetadata,
+// parse failures and fallbacks. Histograms are published so Prometheus can aggregate percentiles.
+@Component
+public class LlmMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary promptBytes;
+    private final DistributionSummary responseBytes;
+
+    public LlmMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.promptBytes = DistributionSummary.builder("ai.llm.prompt.size")
+                .description("Size of prompts sent to Gemini")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.responseBytes = DistributionSummary.builder("ai.llm.response.size")
+                .description("Size of Gemini responses")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> timeCall(String operation, Mono<T> call) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call
+                    .doOnSuccess(result -> sample.stop(latency(operation, "success")))
+                    .doOnError(e -> sample.stop(latency(operation, outcome(e))))
+                    .doOnCancel(() -> sample.stop(latency(operation, "cancelled")));
+        });
+    }
+
+    public <T> Flux<T> timeStream(String operation, Flux<T> call) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return call
+                    .doOnComplete(() -> sample.stop(latency(operation, "success")))
+                    .doOnError(e -> sample.stop(latency(operation, outcome(e))))
+                    .doOnCancel(() -> sample.stop(latency(operation, "cancelled")));
+        });
+    }
+
+    public void recordPrompt(String prompt) {
+        promptBytes.record(prompt.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    public void recordResponse(String response) {
+        recordResponseSize(response.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    public void recordResponseSize(long bytes) {
+        responseBytes.record(bytes);
+    }
+
+    public void recordUsage(GeminiResponse.UsageMetadata usage) {
+        if (usage == null) return;
+        recordTokens("prompt", usage.getPromptTokenCount());
+        recordTokens("completion", usage.getCandidatesTokenCount());
+        recordTokens("total", usage.getTotalTokenCount());
+    }
+
+    public void parseFailure(String path) {
+        meterRegistry.counter("ai.llm.parse.failures", "path", path).increment();
+    }
+
+    // Counted each time the default recommendation is handed out instead of an analysis
+    public void fallback(String reason) {
+        meterRegistry.counter("ai.recommendation.fallback", "reason", reason).increment();
+    }
+
+    private void recordTokens(String type, Integer count) {
+        if (count == null) return;
+        meterRegistry.counter("ai.llm.tokens", "type", type).increment(count);
+        DistributionSummary.builder("ai.llm.tokens.per.call")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(count);
+    }
+
+    private Timer latency(String operation, String outcome) {
+        return Timer.builder("ai.llm.latency")
+                .description("Gemini call latency, including the wait for a pooled connection")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private String outcome(Throwable e) {
+        if (e instanceof TimeoutException) return "timeout";
+        if (e instanceof WebClientResponseException responseException) {
+            return "http_" + responseException.getStatusCode().value();
+        }
+        return "error";
+    }
+}
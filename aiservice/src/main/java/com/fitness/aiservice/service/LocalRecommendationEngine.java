@@ -0,0 +1,111 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Deterministic recommendations from per-activity-type rules, for activities simple enough
+// that an LLM analysis adds little. Pure computation: no I/O, no shared mutable state.
+@Component
+public class LocalRecommendationEngine {
+
+    // Typical calories per minute and a sensible session length for each type
+    record TypeRule(double minCaloriesPerMinute, double maxCaloriesPerMinute,
+                    int minMinutes, int targetMinutes, String focus,
+                    String suggestion, String suggestionDetail, List<String> safety) {
+    }
+
+    private static final TypeRule GENERIC = new TypeRule(2, 12, 15, 30,
+            "general fitness",
+            "Mixed session", "Combine 20 minutes of moderate cardio with 10 minutes of mobility work.",
+            List.of("Warm up for 5-10 minutes before increasing intensity.",
+                    "Stay hydrated before, during and after exercise.",
+                    "Stop and rest if you feel pain, dizziness or shortness of breath."));
+
+    private static final Map<String, TypeRule> RULES = Map.of(
+            "WALKING", new TypeRule(2.5, 7, 20, 30,
+                    "low-impact aerobic fitness",
+                    "Brisk walk intervals", "Alternate 3 minutes brisk and 2 minutes easy walking for 30 minutes.",
+                    List.of("Wear supportive, well-fitting shoes.",
+                            "Stay visible to traffic when walking outdoors.",
+                            "Drink water before and after longer walks.")),
+            "STRETCHING", new TypeRule(1.5, 4, 10, 15,
+                    "flexibility and mobility",
+                    "Full-body mobility flow", "Hold each major stretch for 30 seconds, two rounds, focusing on hips, hamstrings and shoulders.",
+                    List.of("Stretch to mild tension, never to pain.",
+                            "Do not bounce in a stretch.",
+                            "Breathe steadily and avoid holding your breath.")),
+            "YOGA", new TypeRule(2, 6, 20, 45,
+                    "flexibility, balance and core strength",
+                    "Balance-focused flow", "Add tree pose, warrior III and plank holds to your next session.",
+                    List.of("Modify poses that strain your joints.",
+                            "Use a non-slip mat and props as needed.",
+                            "Move slowly in and out of inversions and deep bends.")),
+            "HIKING", new TypeRule(4, 10, 45, 90,
+                    "endurance and leg strength",
+                    "Hill repeats", "Find a moderate incline and do 6 climbs of 2 minutes with easy descents.",
+                    List.of("Check the weather and tell someone your route.",
+                            "Carry enough water and a snack.",
+                            "Wear footwear with good grip and ankle support."))
+    );
+
+    public boolean isTypical(Activity activity) {
+        Double caloriesPerMinute = caloriesPerMinute(activity);
+        if (caloriesPerMinute == null) return true;
+        TypeRule rule = rule(activity.getType());
+        return caloriesPerMinute >= rule.minCaloriesPerMinute() && caloriesPerMinute <= rule.maxCaloriesPerMinute();
+    }
+
+    public Recommendation recommend(Activity activity) {
+        TypeRule rule = rule(activity.getType());
+        String type = activity.getType() == null ? "activity" : activity.getType().toLowerCase().replace('_', ' ');
+        int minutes = activity.getDuration() == null ? 0 : activity.getDuration();
+
+        String overall = minutes >= rule.targetMinutes()
+                ? "Good " + type + " session of " + minutes + " minutes, which meets the target for " + rule.focus() + "."
+                : "A " + minutes + " minute " + type + " session still supports " + rule.focus() + ".";
+        StringBuilder analysis = new StringBuilder("Overall: ").append(overall);
+        Double caloriesPerMinute = caloriesPerMinute(activity);
+        if (caloriesPerMinute != null) {
+            analysis.append("\n\nCaloriesBurned:")
+                    .append(activity.getCaloriesBurned()).append(" calories, about ")
+                    .append(Math.round(caloriesPerMinute * 10) / 10.0).append(" per minute, ")
+                    .append(caloriesPerMinute < (rule.minCaloriesPerMinute() + rule.maxCaloriesPerMinute()) / 2
+                            ? "a light effort for this activity."
+                            : "a solid effort for this activity.");
+        }
+
+        List<String> improvements = new ArrayList<>();
+        if (minutes < rule.minMinutes()) {
+            improvements.add("Duration Build up towards " + rule.minMinutes() + " minutes per session.");
+        } else if (minutes < rule.targetMinutes()) {
+            improvements.add("Duration Extend the session gradually towards " + rule.targetMinutes() + " minutes.");
+        }
+        improvements.add("Consistency Aim for at least three sessions a week.");
+
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .recommendation(analysis.toString())
+                .improvements(improvements)
+                .suggestions(List.of(rule.suggestion() + " " + rule.suggestionDetail()))
+                .safety(rule.safety())
+                .build();
+    }
+
+    private TypeRule rule(String type) {
+        return type == null ? GENERIC : RULES.getOrDefault(type, GENERIC);
+    }
+
+    private Double caloriesPerMinute(Activity activity) {
+        if (activity.getCaloriesBurned() == null || activity.getDuration() == null || activity.getDuration() <= 0) {
+            return null;
+        }
+        return activity.getCaloriesBurned() / (double) activity.getDuration();
+    }
+}
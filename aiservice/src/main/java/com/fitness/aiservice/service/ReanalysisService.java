@@ -0,0 +1,136 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ReanalysisRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Remembers activities that were short-circuited to the fallback and puts them back on the queue once the circuit closes
+@Service
+@Slf4j
+public class ReanalysisService {
+
+    private final GeminiService geminiService;
+    private final MongoTemplate mongoTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final Counter flagged;
+    private final Counter replayed;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    @Value("${rabbitmq.exchange.name}")
+    private String exchange;
+
+    // Re-analysis is bulk work and takes the backfill lane
+    @Value("${rabbitmq.backfill.routing-key}")
+    private String routingKey;
+
+    @Value("${ai.reanalysis.replay-batch-size:100}")
+    private int replayBatchSize;
+
+    @Value("${rabbitmq.retry.confirm-timeout:5s}")
+    private Duration confirmTimeout;
+
+    public ReanalysisService(GeminiService geminiService, MongoTemplate mongoTemplate,
+                             RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.geminiService = geminiService;
+        this.mongoTemplate = mongoTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.flagged = meterRegistry.counter("ai.reanalysis", "event", "flagged");
+        this.replayed = meterRegistry.counter("ai.reanalysis", "event", "replayed");
+        // Transition events fire on the calling thread, which may be a Netty event loop
+        geminiService.onCircuitClosed(() -> Schedulers.boundedElastic().schedule(this::replayPending));
+    }
+
+    public void flag(Activity activity) {
+        mongoTemplate.save(ReanalysisRequest.builder()
+                .activityId(activity.getId())
+                .activity(activity)
+                .createdAt(LocalDateTime.now())
+                .build());
+        flagged.increment();
+    }
+
+    // Also drains anything left over from before a restart, when no CLOSED transition will come
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayPending() {
+        if (!replaying.compareAndSet(false, true)) return;
+        try {
+            int total = 0;
+            // Stop early if the circuit opens again; the remaining requests wait for the next close
+            while (geminiService.isCallPermitted()) {
+                List<ReanalysisRequest> batch = mongoTemplate.find(new Query()
+                        .with(Sort.by(Sort.Direction.ASC, "createdAt"))
+                        .limit(replayBatchSize), ReanalysisRequest.class);
+                if (batch.isEmpty()) break;
+
+                List<CorrelationData> correlations = new ArrayList<>(batch.size());
+                for (ReanalysisRequest request : batch) {
+                    CorrelationData correlation = new CorrelationData(request.getActivityId());
+                    rabbitTemplate.convertAndSend(exchange, routingKey, request.getActivity(), message -> {
+                        message.getMessageProperties().setTimestamp(new Date());
+                        return message;
+                    }, correlation);
+                    correlations.add(correlation);
+                }
+
+                // Only confirmed, routed requests are removed, and only if they were not flagged again meanwhile
+                List<Query> confirmed = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    if (isConfirmed(correlations.get(i))) {
+                        confirmed.add(Query.query(Criteria.where("_id").is(batch.get(i).getActivityId())
+                                .and("createdAt").is(batch.get(i).getCreatedAt())));
+                    }
+                }
+                if (!confirmed.isEmpty()) {
+                    mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ReanalysisRequest.class)
+                            .remove(confirmed)
+                            .execute();
+                }
+                replayed.increment(confirmed.size());
+                total += confirmed.size();
+                if (confirmed.size() < batch.size()) {
+                    log.warn("{} of {} re-analysis requests were not confirmed by the broker, keeping them for the next replay",
+                            batch.size() - confirmed.size(), batch.size());
+                    break;
+                }
+            }
+            if (total > 0) log.info("Requeued {} activities for re-analysis", total);
+        } catch (Exception e) {
+            log.error("Replaying pending re-analysis failed", e);
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private boolean isConfirmed(CorrelationData correlation) throws InterruptedException {
+        try {
+            CorrelationData.Confirm confirm = correlation.getFuture().get(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return confirm.isAck() && correlation.getReturned() == null;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+}
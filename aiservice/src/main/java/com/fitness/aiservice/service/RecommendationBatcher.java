@@ -0,0 +1,173 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Collects activities for up to max-size items or max-wait-ms and analyzes them with one LLM request
+@Service
+@Slf4j
+public class RecommendationBatcher {
+
+    private final ActivityAIService aiService;
+    private final GeminiService geminiService;
+    private final RecommendationCacheService cacheService;
+    private final LlmMetrics llmMetrics;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final DistributionSummary batchSize;
+    private final Timer batchTimer;
+
+    @Getter
+    @Value("${ai.batch.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ai.batch.max-size:10}")
+    private int maxSize;
+
+    @Value("${ai.batch.max-wait-ms:200}")
+    private long maxWaitMs;
+
+    private List<PendingActivity> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public RecommendationBatcher(ActivityAIService aiService, GeminiService geminiService,
+                                 RecommendationCacheService cacheService, LlmMetrics llmMetrics,
+                                 MeterRegistry meterRegistry) {
+        this.aiService = aiService;
+        this.geminiService = geminiService;
+        this.cacheService = cacheService;
+        this.llmMetrics = llmMetrics;
+        this.batchSize = DistributionSummary.builder("ai.batch.size")
+                .description("Activities analyzed per batched LLM request")
+                .register(meterRegistry);
+        this.batchTimer = meterRegistry.timer("ai.batch.latency");
+    }
+
+    public Mono<Recommendation> submit(Activity activity) {
+        // Locally routed activities never wait for a batch
+        return Mono.defer(() -> aiService.recommendLocally(activity)
+                .map(Mono::just)
+                .orElseGet(() -> Mono.fromCallable(() -> cacheService.lookup(activity))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMap(cached -> cached.map(Mono::just).orElseGet(() -> Mono.fromFuture(enqueue(activity))))));
+    }
+
+    private CompletableFuture<Recommendation> enqueue(Activity activity) {
+        CompletableFuture<Recommendation> result = new CompletableFuture<>();
+        List<PendingActivity> full = null;
+        lock.lock();
+        try {
+            pending.add(new PendingActivity(activity, result));
+            if (pending.size() >= maxSize) {
+                full = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = timer.schedule(this::flushDue, maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) dispatch(full);
+        return result;
+    }
+
+    private void flushDue() {
+        List<PendingActivity> batch;
+        lock.lock();
+        try {
+            batch = drain();
+        } finally {
+            lock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    // Must hold the lock
+    private List<PendingActivity> drain() {
+        List<PendingActivity> batch = pending;
+        pending = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(List<PendingActivity> batch) {
+        if (batch.isEmpty()) return;
+        batchSize.record(batch.size());
+        // Single calls short-circuit to the fallback while the circuit is open
+        if (batch.size() == 1 || !geminiService.isCallPermitted()) {
+            analyzeSingly(batch);
+            return;
+        }
+
+        List<Activity> activities = batch.stream().map(PendingActivity::activity).toList();
+        Timer.Sample sample = Timer.start();
+        Mono.defer(() -> geminiService.getAnswer(aiService.createBatchPromptForActivities(activities)))
+                // Parsing also writes the results to the Mongo cache tier
+                .publishOn(Schedulers.boundedElastic())
+                .map(aiResponse -> {
+                    try {
+                        return aiService.processBatchResponse(activities, aiResponse);
+                    } catch (Exception e) {
+                        llmMetrics.parseFailure("batch");
+                        throw new IllegalStateException("Unparseable batch response", e);
+                    }
+                })
+                .doFinally(signal -> sample.stop(batchTimer))
+                .subscribe(recommendations -> complete(batch, recommendations), e -> {
+                    log.warn("Batched analysis of {} activities failed, falling back to single calls", batch.size(), e);
+                    analyzeSingly(batch);
+                });
+    }
+
+    private void complete(List<PendingActivity> batch, Map<String, Recommendation> recommendations) {
+        List<PendingActivity> missing = new ArrayList<>();
+        for (PendingActivity item : batch) {
+            Recommendation recommendation = recommendations.get(item.activity().getId());
+            if (recommendation != null) item.result().complete(recommendation);
+            else missing.add(item);
+        }
+        if (!missing.isEmpty()) {
+            log.warn("Batch response was missing {} of {} activities", missing.size(), batch.size());
+            analyzeSingly(missing);
+        }
+    }
+
+    private void analyzeSingly(List<PendingActivity> items) {
+        for (PendingActivity item : items) {
+            aiService.analyzeWithLlm(item.activity())
+                    .subscribe(item.result()::complete, item.result()::completeExceptionally);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdown();
+    }
+
+    private record PendingActivity(Activity activity, CompletableFuture<Recommendation> result) {
+    }
+}
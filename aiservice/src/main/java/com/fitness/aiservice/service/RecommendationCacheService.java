@@ -0,0 +1,167 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationTemplate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class RecommendationCacheService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+
+    // Local tier in front of the recommendation_cache collection
+    private final Cache<String, RecommendationTemplate> localTier;
+
+    private final Counter localHits;
+    private final Counter mongoHits;
+    private final Counter misses;
+
+    @Value("${ai.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.cache.duration-bucket-minutes:5}")
+    private int durationBucketMinutes;
+
+    @Value("${ai.cache.calories-bucket:25}")
+    private int caloriesBucket;
+
+    public RecommendationCacheService(MongoTemplate mongoTemplate,
+                                      ObjectMapper objectMapper,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${ai.cache.local.max-size:10000}") long maxSize,
+                                      @Value("${ai.cache.local.ttl:1h}") Duration ttl) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.localTier = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localTier, "recommendation-local");
+
+        this.localHits = meterRegistry.counter("ai.recommendation.cache", "result", "local_hit");
+        this.mongoHits = meterRegistry.counter("ai.recommendation.cache", "result", "mongo_hit");
+        this.misses = meterRegistry.counter("ai.recommendation.cache", "result", "miss");
+    }
+
+    public Optional<Recommendation> lookup(Activity activity) {
+        if (!enabled) return Optional.empty();
+
+        String fingerprint = fingerprint(activity);
+        RecommendationTemplate template = localTier.getIfPresent(fingerprint);
+        if (template != null) {
+            localHits.increment();
+            return Optional.of(toRecommendation(template, activity));
+        }
+
+        template = mongoTemplate.findById(fingerprint, RecommendationTemplate.class);
+        if (template != null) {
+            mongoHits.increment();
+            localTier.put(fingerprint, template);
+            return Optional.of(toRecommendation(template, activity));
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void store(Activity activity, Recommendation recommendation) {
+        if (!enabled) return;
+
+        RecommendationTemplate template = RecommendationTemplate.builder()
+                .fingerprint(fingerprint(activity))
+                .recommendation(recommendation.getRecommendation())
+                .improvements(recommendation.getImprovements())
+                .suggestions(recommendation.getSuggestions())
+                .safety(recommendation.getSafety())
+                .createdAt(LocalDateTime.now())
+                .build();
+        localTier.put(template.getFingerprint(), template);
+        try {
+            mongoTemplate.save(template);
+        } catch (Exception e) {
+            // The local tier still serves it; a failed write only costs a future miss
+            log.warn("Failed to persist recommendation cache entry {}", template.getFingerprint(), e);
+        }
+    }
+
+    // Canonical key over the prompt inputs: type, bucketed duration and calories, normalized metrics
+    String fingerprint(Activity activity) {
+        return activity.getType()
+                + "|d" + bucket(activity.getDuration(), durationBucketMinutes)
+                + "|c" + bucket(activity.getCaloriesBurned(), caloriesBucket)
+                + "|m" + metricsHash(activity.getAdditionalMetrics());
+    }
+
+    private String bucket(Integer value, int granularity) {
+        if (value == null) return "-";
+        return String.valueOf(Math.round(value / (double) granularity) * granularity);
+    }
+
+    private String metricsHash(Map<String, Object> metrics) {
+        if (metrics == null || metrics.isEmpty()) return "none";
+        try {
+            byte[] canonical = objectMapper.writeValueAsBytes(normalize(metrics));
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical);
+            return HexFormat.of().formatHex(digest, 0, 12);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to fingerprint activity metrics", e);
+        }
+    }
+
+    // Sorted, lower-cased keys and whole-number values, so equivalent metrics hash the same
+    private Object normalize(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            map.forEach((key, nested) -> sorted.put(String.valueOf(key).trim().toLowerCase(), normalize(nested)));
+            return sorted;
+        }
+        if (value instanceof List<?> list) {
+            return list.stream().map(this::normalize).collect(Collectors.toList());
+        }
+        if (value instanceof Number number) {
+            return Math.round(number.doubleValue());
+        }
+        if (value instanceof String text) {
+            return text.trim().toLowerCase();
+        }
+        return value;
+    }
+
+    private Recommendation toRecommendation(RecommendationTemplate template, Activity activity) {
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .recommendation(template.getRecommendation())
+                .improvements(template.getImprovements())
+                .suggestions(template.getSuggestions())
+                .safety(template.getSafety())
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushes saved recommendations to the owning user's open SSE subscriptions. Events go through a
+// fanout exchange so every aiservice instance sees them, whichever one the user is connected to.
+@Service
+@Slf4j
+public class RecommendationPushService {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Map<String, Set<Sinks.Many<Recommendation>>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Counter delivered;
+    private final Counter disconnected;
+
+    @Value("${rabbitmq.recommendation-events.exchange:fitness.recommendations}")
+    private String eventsExchange;
+
+    @Value("${ai.push.heartbeat:15s}")
+    private Duration heartbeat;
+
+    @Value("${ai.push.buffer-size:32}")
+    private int bufferSize;
+
+    @Value("${ai.push.max-subscriptions-per-user:5}")
+    private int maxSubscriptionsPerUser;
+
+    public RecommendationPushService(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.delivered = meterRegistry.counter("ai.push", "event", "delivered");
+        this.disconnected = meterRegistry.counter("ai.push", "event", "slow_subscriber_disconnected");
+        Gauge.builder("ai.push.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open recommendation SSE subscriptions on this instance")
+                .register(meterRegistry);
+    }
+
+    // Best effort: a lost event only means the client has to fetch the recommendation itself
+    public void publish(Recommendation recommendation) {
+        try {
+            rabbitTemplate.convertAndSend(eventsExchange, "", recommendation);
+        } catch (Exception e) {
+            log.warn("Failed to publish recommendation event for activity {}", recommendation.getActivityId(), e);
+        }
+    }
+
+    // Each instance consumes the fanout through its own auto-delete queue; plain auto-ack, no retries
+    @RabbitListener(queues = "#{recommendationEventsQueue.name}", ackMode = "AUTO", concurrency = "1")
+    public void onRecommendationSaved(Recommendation recommendation) {
+        Set<Sinks.Many<Recommendation>> sinks = subscribers.get(recommendation.getUserId());
+        if (sinks == null) return;
+        for (Sinks.Many<Recommendation> sink : sinks) {
+            if (sink.tryEmitNext(recommendation).isSuccess()) {
+                delivered.increment();
+            } else {
+                // Buffer full: the client is not reading. Close it so it reconnects and refetches.
+                disconnected.increment();
+                sink.tryEmitError(new IllegalStateException("Subscriber fell behind"));
+            }
+        }
+    }
+
+    // Registers on subscription rather than on call, so a request that never subscribes leaves nothing behind
+    public Flux<ServerSentEvent<Recommendation>> subscribe(String userId) {
+        return Flux.defer(() -> {
+            // Bounded per-subscriber buffer for events the client has not read yet
+            Sinks.Many<Recommendation> sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(new ArrayBlockingQueue<>(bufferSize));
+
+            AtomicBoolean registered = new AtomicBoolean();
+            subscribers.compute(userId, (id, current) -> {
+                Set<Sinks.Many<Recommendation>> sinks = current == null ? ConcurrentHashMap.newKeySet() : current;
+                if (sinks.size() < maxSubscriptionsPerUser) registered.set(sinks.add(sink));
+                return sinks;
+            });
+            if (!registered.get()) {
+                return Flux.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Too many open recommendation subscriptions for user " + userId));
+            }
+            subscriberCount.incrementAndGet();
+
+            Flux<ServerSentEvent<Recommendation>> events = sink.asFlux()
+                    .map(recommendation -> ServerSentEvent.builder(recommendation)
+                            .id(recommendation.getActivityId())
+                            .event("recommendation")
+                            .build());
+            // Comment-only events keep proxies and load balancers from closing an idle stream
+            Flux<ServerSentEvent<Recommendation>> heartbeats = Flux.interval(heartbeat)
+                    .map(tick -> ServerSentEvent.<Recommendation>builder().comment("heartbeat").build());
+
+            return Flux.merge(events, heartbeats)
+                    .doFinally(signal -> {
+                        subscriberCount.decrementAndGet();
+                        subscribers.computeIfPresent(userId, (id, current) -> {
+                            current.remove(sink);
+                            return current.isEmpty() ? null : current;
+                        });
+                    });
+        });
+    }
+}
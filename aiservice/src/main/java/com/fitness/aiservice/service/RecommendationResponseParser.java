@@ -0,0 +1,131 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityAnalysis;
+import com.fitness.aiservice.model.GeminiResponse;
+import com.fitness.aiservice.model.Recommendation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Binds Gemini responses straight into typed DTOs. The readers are built once from the shared
+// mapper and are thread-safe; fences are cut by index rather than with a regex.
+@Component
+public class RecommendationResponseParser {
+
+    private final ObjectReader responseReader;
+    private final ObjectReader analysisReader;
+    private final ObjectReader batchReader;
+    private final LlmMetrics llmMetrics;
+
+    public RecommendationResponseParser(ObjectMapper objectMapper, LlmMetrics llmMetrics) {
+        this.llmMetrics = llmMetrics;
+        this.responseReader = objectMapper.readerFor(GeminiResponse.class);
+        this.analysisReader = objectMapper.readerFor(ActivityAnalysis.class);
+        this.batchReader = objectMapper.readerFor(new TypeReference<List<ActivityAnalysis>>() {});
+    }
+
+    public Recommendation parse(Activity activity, String aiResponse) throws IOException {
+        return toRecommendation(activity, analysisReader.readValue(responseJson(aiResponse)));
+    }
+
+    // Accepts either a bare array or an object wrapping it in "results"
+    public List<ActivityAnalysis> parseBatch(String aiResponse) throws IOException {
+        String json = responseJson(aiResponse);
+        if (json.charAt(0) == '[') return batchReader.readValue(json);
+
+        JsonNode results = analysisReader.readTree(json).path("results");
+        if (!results.isArray()) throw new IOException("Batch response is not a JSON array");
+        return batchReader.readValue(results);
+    }
+
+    // For partially streamed responses, which arrive as a tree of the sections parsed so far
+    public ActivityAnalysis fromTree(JsonNode analysisJson) throws IOException {
+        return analysisReader.readValue(analysisJson);
+    }
+
+    public Recommendation toRecommendation(Activity activity, ActivityAnalysis analysis) {
+        return Recommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activityType(activity.getType())
+                .recommendation(formatAnalysis(analysis.getAnalysis()))
+                .improvements(formatImprovements(analysis.getImprovements()))
+                .suggestions(formatSuggestions(analysis.getSuggestions()))
+                .safety(formatSafety(analysis.getSafety()))
+                .build();
+    }
+
+    public String formatAnalysis(ActivityAnalysis.Analysis analysis) {
+        if (analysis == null) return "";
+        StringBuilder fullAnalysis = new StringBuilder();
+        addAnalysisSection(fullAnalysis, analysis.getOverall(), "Overall: ");
+        addAnalysisSection(fullAnalysis, analysis.getPace(), "Pace:");
+        addAnalysisSection(fullAnalysis, analysis.getHeartRate(), "HeartRate:");
+        addAnalysisSection(fullAnalysis, analysis.getCalories(), "CaloriesBurned:");
+        return fullAnalysis.toString().trim();
+    }
+
+    public List<String> formatImprovements(List<ActivityAnalysis.Improvement> improvementList) {
+        List<String> improvements = new ArrayList<>();
+        if (improvementList != null) {
+            for (ActivityAnalysis.Improvement improvement : improvementList) {
+                improvements.add(textOf(improvement.getArea()) + " " + textOf(improvement.getRecommendation()));
+            }
+        }
+        return improvements.isEmpty()
+                ? Collections.singletonList("No specific improvement provided")
+                : improvements;
+    }
+
+    public List<String> formatSuggestions(List<ActivityAnalysis.Suggestion> suggestionList) {
+        List<String> suggestions = new ArrayList<>();
+        if (suggestionList != null) {
+            for (ActivityAnalysis.Suggestion suggestion : suggestionList) {
+                suggestions.add(textOf(suggestion.getWorkout()) + " " + textOf(suggestion.getDescription()));
+            }
+        }
+        return suggestions.isEmpty()
+                ? Collections.singletonList("No specific suggestion provided")
+                : suggestions;
+    }
+
+    public List<String> formatSafety(List<String> safety) {
+        return safety == null || safety.isEmpty()
+                ? Collections.singletonList("Follow general safety guidelines.")
+                : safety;
+    }
+
+    // The completion text with any ```json fence around it removed
+    private String responseJson(String aiResponse) throws IOException {
+        GeminiResponse response = responseReader.readValue(aiResponse);
+        llmMetrics.recordUsage(response.getUsageMetadata());
+        String text = response.firstText();
+        if (text == null) throw new IOException("Gemini response has no candidate text");
+
+        int start = 0;
+        while (start < text.length() && text.charAt(start) != '{' && text.charAt(start) != '[') start++;
+        int end = Math.max(text.lastIndexOf('}'), text.lastIndexOf(']')) + 1;
+        if (start >= end) throw new IOException("Gemini response text contains no JSON");
+        return text.substring(start, end);
+    }
+
+    private void addAnalysisSection(StringBuilder fullAnalysis, String value, String prefix) {
+        if (value != null) {
+            fullAnalysis.append(prefix)
+                    .append(value)
+                    .append("\n\n");
+        }
+    }
+
+    private String textOf(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,55 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+// Decides whether an activity is simple enough for the local engine. Only configured types,
+// with few additional metrics, a bounded duration and a typical intensity stay local;
+// anything rich or unusual goes to the LLM. The split is counted in ai.recommendation.route.
+@Component
+public class RecommendationRoutingPolicy {
+
+    private final LocalRecommendationEngine localEngine;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ai.routing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.routing.local-types:STRETCHING,WALKING,YOGA}")
+    private Set<String> localTypes;
+
+    @Value("${ai.routing.max-duration-minutes:90}")
+    private int maxDurationMinutes;
+
+    @Value("${ai.routing.max-additional-metrics:0}")
+    private int maxAdditionalMetrics;
+
+    public RecommendationRoutingPolicy(LocalRecommendationEngine localEngine, MeterRegistry meterRegistry) {
+        this.localEngine = localEngine;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean routesLocally(Activity activity) {
+        String reason = llmReason(activity);
+        meterRegistry.counter("ai.recommendation.route",
+                "route", reason == null ? "local" : "llm",
+                "reason", reason == null ? "simple" : reason).increment();
+        return reason == null;
+    }
+
+    // Why the activity needs the LLM, or null if the local engine can handle it
+    private String llmReason(Activity activity) {
+        if (!enabled) return "disabled";
+        if (activity.getType() == null || !localTypes.contains(activity.getType())) return "type";
+        int metrics = activity.getAdditionalMetrics() == null ? 0 : activity.getAdditionalMetrics().size();
+        if (metrics > maxAdditionalMetrics) return "metrics";
+        if (activity.getDuration() == null || activity.getDuration() <= 0
+                || activity.getDuration() > maxDurationMinutes) return "duration";
+        if (!localEngine.isTypical(activity)) return "unusual";
+        return null;
+    }
+}
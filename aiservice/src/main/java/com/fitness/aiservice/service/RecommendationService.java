@@ -1,23 +1,140 @@
 package com.fitness.aiservice.service;
 
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationChunk;
+import com.fitness.aiservice.model.RecommendationPage;
+import com.fitness.aiservice.model.RecommendationSummary;
 import com.fitness.aiservice.repository.RecommendationRepository;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 public class RecommendationService {
     private final RecommendationRepository repository;
+    private final MongoTemplate mongoTemplate;
+    private final ActivityAIService aiService;
+    private final ActivityLookupService activityLookupService;
 
-    public List<Recommendation> getUserRecommendation(String userId) {
-        return repository.findByUserId(userId);
+    @Value("${ai.recommendations.page.max-size:100}")
+    private int maxPageSize;
+
+    public RecommendationPage<Recommendation> getUserRecommendations(String userId, int limit, String cursor) {
+        return page(userId, limit, cursor, Recommendation.class,
+                recommendation -> encodeCursor(recommendation.getCreatedAt(), recommendation.getId()));
+    }
+
+    // Reads only the summary fields from Mongo, not the analysis text
+    public RecommendationPage<RecommendationSummary> getUserRecommendationSummaries(String userId, int limit, String cursor) {
+        return page(userId, limit, cursor, RecommendationSummary.class,
+                summary -> encodeCursor(summary.getCreatedAt(), summary.getId()));
+    }
+
+    private <T> RecommendationPage<T> page(String userId, int limit, String cursor, Class<T> view,
+                                           Function<T, String> cursorOf) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (cursor != null) criteria = new Criteria().andOperator(criteria, afterCursor(cursor));
+
+        // Served by user_created_at_idx, newest first; one extra row tells us if there is a next page
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .limit(pageSize + 1);
+        List<T> items = new ArrayList<>(mongoTemplate.query(Recommendation.class).as(view).matching(query).all());
+
+        boolean hasMore = items.size() > pageSize;
+        if (hasMore) items = items.subList(0, pageSize);
+        return new RecommendationPage<>(items, hasMore ? cursorOf.apply(items.get(items.size() - 1)) : null);
+    }
+
+    private String encodeCursor(LocalDateTime createdAt, String id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Criteria afterCursor(String cursor) {
+        LocalDateTime lastCreatedAt;
+        ObjectId lastId;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            lastCreatedAt = LocalDateTime.parse(decoded.substring(0, separator));
+            lastId = new ObjectId(decoded.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+        }
+
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(lastCreatedAt),
+                new Criteria().andOperator(
+                        Criteria.where("createdAt").is(lastCreatedAt),
+                        Criteria.where("_id").lt(lastId)));
     }
 
     public Recommendation getActivityRecommendation(String activityId) {
         return repository.findByActivityId(activityId)
-                .orElseThrow(() -> new RuntimeException("No recommendation found for Activity: " + activityId));
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "No recommendation found for Activity: " + activityId));
+    }
+
+    // Streams the caller's own activity. An existing recommendation is replayed as chunks; otherwise
+    // sections are streamed as they are generated. Nothing is saved here: ActivityMessageListener
+    // stays the only writer, and reuses the streamed analysis through the recommendation cache.
+    public Flux<RecommendationChunk> streamRecommendation(String activityId, String userId) {
+        return activityLookupService.getOwnedActivity(activityId, userId)
+                .flatMapMany(activity -> Mono.fromCallable(() -> repository.findByActivityId(activityId))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .flatMapMany(saved -> saved
+                                .map(aiService::toChunks)
+                                .orElseGet(() -> aiService.streamRecommendation(activity))));
+    }
+
+    // One recommendation per activity: a re-analysis or redelivery replaces the earlier result
+    public void saveForActivity(Recommendation recommendation) {
+        mongoTemplate.findAndReplace(
+                Query.query(Criteria.where("activityId").is(recommendation.getActivityId())),
+                recommendation,
+                FindAndReplaceOptions.options().upsert());
+    }
+
+    // saveForActivity for a whole batch in one unordered bulk write. Every upsert is attempted;
+    // the ones Mongo rejected are returned so the caller can retry just those.
+    public List<Recommendation> saveAllForActivities(List<Recommendation> recommendations) {
+        if (recommendations.isEmpty()) return List.of();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Recommendation.class);
+        for (Recommendation recommendation : recommendations) {
+            bulk.replaceOne(Query.query(Criteria.where("activityId").is(recommendation.getActivityId())),
+                    recommendation, FindAndReplaceOptions.options().upsert());
+        }
+        try {
+            bulk.execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            return e.getErrors().stream()
+                    .map(error -> recommendations.get(error.getIndex()))
+                    .toList();
+        }
     }
 }
@@ -0,0 +1,95 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Feeds streamed completion text into a non-blocking JSON parser and hands back each
+// top-level field of the recommendation object as soon as its value is complete.
+// Text before the opening brace (e.g. a ```json fence) and after the closing brace is ignored.
+public class RecommendationStreamParser implements AutoCloseable {
+
+    private final ObjectMapper mapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final ObjectNode result;
+
+    private boolean started;
+    private boolean finished;
+    private int depth;
+    private String field;
+    private TokenBuffer value;
+
+    public RecommendationStreamParser(ObjectMapper mapper) throws IOException {
+        this.mapper = mapper;
+        this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.result = mapper.createObjectNode();
+    }
+
+    public List<Section> feed(String chunk) throws IOException {
+        if (finished) return List.of();
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) return List.of();
+            chunk = chunk.substring(start);
+            started = true;
+        }
+
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        feeder.feedInput(bytes, 0, bytes.length);
+
+        List<Section> completed = new ArrayList<>();
+        JsonToken token;
+        while (!finished && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (depth == 0) {
+                if (token != JsonToken.START_OBJECT) throw new IOException("Recommendation is not a JSON object");
+                depth = 1;
+            } else if (depth == 1 && token == JsonToken.FIELD_NAME) {
+                field = parser.currentName();
+            } else if (depth == 1 && token == JsonToken.END_OBJECT) {
+                finished = true;
+            } else {
+                if (value == null) value = new TokenBuffer(parser);
+                value.copyCurrentEvent(parser);
+                if (token.isStructStart()) depth++;
+                else if (token.isStructEnd()) depth--;
+
+                // Back at the top level: the field's value is complete
+                if (depth == 1) {
+                    JsonNode node = mapper.readTree(value.asParser(mapper));
+                    value = null;
+                    result.set(field, node);
+                    completed.add(new Section(field, node));
+                }
+            }
+        }
+        return completed;
+    }
+
+    public boolean isComplete() {
+        return finished;
+    }
+
+    // All sections parsed so far, shaped like a non-streamed recommendation
+    public ObjectNode result() {
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    public record Section(String name, JsonNode value) {
+    }
+}
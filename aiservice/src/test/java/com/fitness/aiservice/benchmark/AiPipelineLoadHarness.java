@@ -0,0 +1,166 @@
+package com.fitness.aiservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.config.GeminiProperties;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.repository.RecommendationRepository;
+import com.fitness.aiservice.service.ActivityAIService;
+import com.fitness.aiservice.service.ActivityLookupService;
+import com.fitness.aiservice.service.ActivityMessageListener;
+import com.fitness.aiservice.service.ActivityRetryService;
+import com.fitness.aiservice.service.GeminiService;
+import com.fitness.aiservice.service.LlmMetrics;
+import com.fitness.aiservice.service.LocalRecommendationEngine;
+import com.fitness.aiservice.service.ReanalysisService;
+import com.fitness.aiservice.service.RecommendationBatcher;
+import com.fitness.aiservice.service.RecommendationCacheService;
+import com.fitness.aiservice.service.RecommendationPushService;
+import com.fitness.aiservice.service.RecommendationResponseParser;
+import com.fitness.aiservice.service.RecommendationRoutingPolicy;
+import com.fitness.aiservice.service.RecommendationService;
+import com.fitness.aiservice.stub.GeminiStubServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drives activity messages through ActivityMessageListener against a GeminiStubServer, fully offline:
+ * Mongo and RabbitMQ are mocks, so the numbers cover the listener, the LLM client stack (pool, rate
+ * limiter, circuit breaker) and response parsing.
+ *
+ * Usage: AiPipelineLoadHarness [messages] [inFlight] [medianLatencyMs] [p99LatencyMs] [errorRate] [maxInFlightCalls]
+ */
+public class AiPipelineLoadHarness {
+
+    public record Report(int messages, int retried, double recommendationsPerSecond,
+                         double p50Ms, double p95Ms, double p99Ms, double maxMs, long llmCalls) {
+
+        @Override
+        public String toString() {
+            return String.format("messages=%d retried=%d llmCalls=%d%nthroughput=%.1f recommendations/s%n"
+                            + "p50=%.1f ms p95=%.1f ms p99=%.1f ms max=%.1f ms",
+                    messages, retried, llmCalls, recommendationsPerSecond, p50Ms, p95Ms, p99Ms, maxMs);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int inFlight = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        long median = args.length > 2 ? Long.parseLong(args[2]) : 800;
+        long p99 = args.length > 3 ? Long.parseLong(args[3]) : 3_000;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+        int maxInFlightCalls = args.length > 5 ? Integer.parseInt(args[5]) : 16;
+
+        GeminiStubServer.Config config = GeminiStubServer.Config.defaults()
+                .withLatency(Duration.ofMillis(median), Duration.ofMillis(p99))
+                .withErrors(errorRate, 503);
+        try (GeminiStubServer stub = new GeminiStubServer(config)) {
+            System.out.println(run(stub, messages, inFlight, maxInFlightCalls));
+        }
+    }
+
+    public static Report run(GeminiStubServer stub, int messages, int inFlight, int maxInFlightCalls) {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ActivityMessageListener listener = pipeline(stub, meterRegistry, maxInFlightCalls);
+        long callsBefore = stub.requests();
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>(messages));
+        long start = System.nanoTime();
+        Flux.range(0, messages)
+                .flatMap(i -> {
+                    long sent = System.nanoTime();
+                    // Failures are handed to the (mocked) retry tiers and counted under ai.retry
+                    return listener.processActivity(activity(i), null, null)
+                            .doOnSuccess(ignored -> latencies.add(System.nanoTime() - sent));
+                }, inFlight)
+                .blockLast();
+        long elapsed = System.nanoTime() - start;
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        int retried = (int) meterRegistry.find("ai.retry").counters().stream().mapToDouble(c -> c.count()).sum();
+        return new Report(messages, retried, sorted.size() / (elapsed / 1_000_000_000.0),
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0),
+                stub.requests() - callsBefore);
+    }
+
+    // Wires the services the way Spring does, with the default property values and mocked persistence
+    static ActivityMessageListener pipeline(GeminiStubServer stub, MeterRegistry meterRegistry, int maxInFlightCalls) {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        // Retry publishes wait for a broker confirm; the mocked broker confirms immediately
+        doAnswer(invocation -> invocation.getArgument(4, CorrelationData.class).getFuture()
+                .complete(new CorrelationData.Confirm(true, null)))
+                .when(rabbitTemplate).convertAndSend(anyString(), anyString(), any(Object.class),
+                        any(MessagePostProcessor.class), any(CorrelationData.class));
+
+        LlmMetrics llmMetrics = new LlmMetrics(meterRegistry);
+        GeminiProperties geminiProperties = new GeminiProperties(
+                new GeminiProperties.Api(stub.generateUrl(), stub.streamUrl(), "stub"),
+                new GeminiProperties.Client(maxInFlightCalls, 100_000, Duration.ofMinutes(5),
+                        Duration.ofSeconds(5), Duration.ofSeconds(60), Duration.ofSeconds(90)),
+                // Rate limit high enough that the stub, not the quota, is what gets measured
+                new GeminiProperties.RateLimit(1_000_000, Duration.ofSeconds(1), Duration.ofMinutes(5)),
+                new GeminiProperties.CircuitBreaker(50, 50, Duration.ofSeconds(30), 20, 10, Duration.ofSeconds(30), 3));
+        GeminiService geminiService = new GeminiService(WebClient.builder(), objectMapper, meterRegistry, llmMetrics,
+                geminiProperties);
+
+        // Cache stays disabled (ai.cache.enabled is only set by Spring), so every message reaches the stub
+        RecommendationCacheService cacheService = new RecommendationCacheService(mongoTemplate, objectMapper,
+                meterRegistry, 10_000, Duration.ofHours(1));
+        ReanalysisService reanalysisService = new ReanalysisService(geminiService, mongoTemplate,
+                rabbitTemplate, meterRegistry);
+        // Local routing is likewise off (ai.routing.enabled is only set by Spring)
+        LocalRecommendationEngine localEngine = new LocalRecommendationEngine();
+        ActivityAIService aiService = new ActivityAIService(geminiService, cacheService, reanalysisService,
+                localEngine, new RecommendationRoutingPolicy(localEngine, meterRegistry),
+                new RecommendationResponseParser(objectMapper, llmMetrics), llmMetrics, objectMapper, meterRegistry);
+        RecommendationBatcher batcher = new RecommendationBatcher(aiService, geminiService, cacheService,
+                llmMetrics, meterRegistry);
+        RecommendationService recommendationService = new RecommendationService(
+                mock(RecommendationRepository.class), mongoTemplate, aiService, mock(ActivityLookupService.class));
+        ActivityRetryService retryService = new ActivityRetryService(rabbitTemplate, meterRegistry);
+        ReflectionTestUtils.setField(retryService, "queue", "activity.queue");
+        ReflectionTestUtils.setField(retryService, "backfillQueue", "activity.backfill.queue");
+        ReflectionTestUtils.setField(retryService, "retryExchange", "fitness.retry");
+        ReflectionTestUtils.setField(retryService, "retryDelays", List.of(Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(5)));
+        ReflectionTestUtils.setField(retryService, "confirmTimeout", Duration.ofSeconds(5));
+        RecommendationPushService pushService = new RecommendationPushService(rabbitTemplate, meterRegistry);
+        return new ActivityMessageListener(aiService, batcher, recommendationService, retryService, pushService, meterRegistry);
+    }
+
+    static Activity activity(int i) {
+        Activity activity = new Activity();
+        activity.setId("load-activity-" + i);
+        activity.setUserId("load-user-" + (i % 100));
+        activity.setType(i % 2 == 0 ? "RUNNING" : "CYCLING");
+        activity.setDuration(20 + i % 60);
+        activity.setCaloriesBurned(150 + i % 500);
+        activity.setAdditionalMetrics(Map.of("distanceKm", 3 + i % 15, "avgHeartRate", 120 + i % 50));
+        return activity;
+    }
+
+    private static double percentile(List<Long> sortedNanos, double percentile) {
+        if (sortedNanos.isEmpty()) return 0;
+        int index = (int) Math.ceil(percentile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(index, 0)) / 1_000_000.0;
+    }
+}
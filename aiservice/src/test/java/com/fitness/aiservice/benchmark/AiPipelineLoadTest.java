@@ -0,0 +1,29 @@
+package com.fitness.aiservice.benchmark;
+
+import com.fitness.aiservice.stub.GeminiStubServer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Short offline run of the load harness so the stub and the wiring stay working; use main() for real numbers
+@Slf4j
+class AiPipelineLoadTest {
+
+    @Test
+    void processesEveryMessageAgainstTheStub() throws Exception {
+        GeminiStubServer.Config config = GeminiStubServer.Config.defaults()
+                .withLatency(Duration.ofMillis(20), Duration.ofMillis(80));
+        try (GeminiStubServer stub = new GeminiStubServer(config)) {
+            AiPipelineLoadHarness.Report report = AiPipelineLoadHarness.run(stub, 200, 32, 16);
+            log.debug("{}", report);
+
+            assertEquals(0, report.retried());
+            assertEquals(200, report.llmCalls());
+            assertTrue(report.recommendationsPerSecond() > 0);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.fitness.aiservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.service.LlmMetrics;
+import com.fitness.aiservice.service.RecommendationResponseParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous per-message parse (new ObjectMapper, two JsonNode trees, replaceAll, String.format)
+ * with RecommendationResponseParser. Read ops/sec from the score and bytes allocated per message
+ * from gc.alloc.rate.norm.
+ *
+ * Usage: run main() from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final String ANALYSIS = """
+            ```json
+            {
+              "analysis": {
+                "overall": "Solid steady-state run with consistent effort throughout.",
+                "pace": "Average pace of 5:40 min/km is sustainable for this distance.",
+                "heartRate": "Heart rate stayed mostly in zone 3.",
+                "calories": "Calorie burn is in line with duration and intensity."
+              },
+              "improvements": [
+                {"area": "Cadence", "recommendation": "Aim for 170-180 steps per minute to reduce impact."},
+                {"area": "Recovery", "recommendation": "Add an easy day after sessions of this length."}
+              ],
+              "suggestions": [
+                {"workout": "Interval run", "description": "6 x 400m at 5k pace with 90s jog recovery."},
+                {"workout": "Long easy run", "description": "60 minutes conversational pace."}
+              ],
+              "safety": [
+                "Warm up for 10 minutes before intervals.",
+                "Hydrate before, during and after runs."
+              ]
+            }
+            ```
+            """;
+
+    private String aiResponse;
+    private Activity activity;
+    private RecommendationResponseParser parser;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        aiResponse = mapper.writeValueAsString(mapper.createObjectNode()
+                .set("candidates", mapper.createArrayNode().add(mapper.createObjectNode()
+                        .set("content", mapper.createObjectNode()
+                                .set("parts", mapper.createArrayNode().add(mapper.createObjectNode()
+                                        .put("text", ANALYSIS)))))));
+
+        activity = new Activity();
+        activity.setId("activity-1");
+        activity.setUserId("user-1");
+        activity.setType("RUNNING");
+        parser = new RecommendationResponseParser(mapper, new LlmMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public Recommendation legacy() throws Exception {
+        return LegacyParser.parse(activity, aiResponse);
+    }
+
+    @Benchmark
+    public Recommendation typed() throws Exception {
+        return parser.parse(activity, aiResponse);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ResponseParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    // Copy of ActivityAIService.processAiResponse before the typed parser replaced it
+    static class LegacyParser {
+
+        static Recommendation parse(Activity activity, String aiResponse) throws Exception {
+            ObjectMapper mapper = new ObjectMapper();
+            JsonNode rootNode = mapper.readTree(aiResponse);
+            JsonNode textNode = rootNode.path("candidates")
+                    .get(0)
+                    .path("content")
+                    .path("parts")
+                    .get(0)
+                    .path("text");
+            String jsonContent = textNode.asText()
+                    .replaceAll("```json\\n", "")
+                    .replaceAll("```\\n", "")
+                    .trim();
+
+            JsonNode analysisJson = mapper.readTree(jsonContent);
+            JsonNode analysisNode = analysisJson.path("analysis");
+
+            StringBuilder fullAnalysis = new StringBuilder();
+            addAnalysisSection(fullAnalysis, analysisNode, "overall", "Overall: ");
+            addAnalysisSection(fullAnalysis, analysisNode, "pace", "Pace:");
+            addAnalysisSection(fullAnalysis, analysisNode, "heartRate", "HeartRate:");
+            addAnalysisSection(fullAnalysis, analysisNode, "calories", "CaloriesBurned:");
+
+            List<String> improvements = new ArrayList<>();
+            analysisJson.path("improvements").forEach(improvement -> improvements.add(String.format("%s %s",
+                    improvement.path("area").asText(), improvement.path("recommendation").asText())));
+
+            List<String> suggestions = new ArrayList<>();
+            analysisJson.path("suggestions").forEach(suggestion -> suggestions.add(String.format("%s %s",
+                    suggestion.path("workout").asText(), suggestion.path("description").asText())));
+
+            List<String> safety = new ArrayList<>();
+            analysisJson.path("safety").forEach(item -> safety.add(item.asText()));
+
+            return Recommendation.builder()
+                    .activityId(activity.getId())
+                    .userId(activity.getUserId())
+                    .activityType(activity.getType())
+                    .recommendation(fullAnalysis.toString().trim())
+                    .improvements(improvements.isEmpty() ? Collections.singletonList("No specific improvement provided") : improvements)
+                    .suggestions(suggestions.isEmpty() ? Collections.singletonList("No specific suggestion provided") : suggestions)
+                    .safety(safety.isEmpty() ? Collections.singletonList("Follow general safety guidelines.") : safety)
+                    .build();
+        }
+
+        private static void addAnalysisSection(StringBuilder fullAnalysis, JsonNode analysisNode, String key, String prefix) {
+            if (!analysisNode.path(key).isMissingNode()) {
+                fullAnalysis.append(prefix).append(analysisNode.path(key).asText()).append("\n\n");
+            }
+        }
+    }
+}
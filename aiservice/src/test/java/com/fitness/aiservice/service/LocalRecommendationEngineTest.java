@@ -0,0 +1,104 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.Recommendation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalRecommendationEngineTest {
+
+    private final LocalRecommendationEngine engine = new LocalRecommendationEngine();
+
+    @Test
+    void intensityBoundsAreInclusive() {
+        // WALKING is typical between 2.5 and 7 calories per minute
+        assertTrue(engine.isTypical(activity("WALKING", 40, 100)));
+        assertTrue(engine.isTypical(activity("WALKING", 40, 280)));
+        assertFalse(engine.isTypical(activity("WALKING", 40, 99)));
+        assertFalse(engine.isTypical(activity("WALKING", 40, 281)));
+    }
+
+    @Test
+    void missingDurationOrCaloriesCountsAsTypical() {
+        assertTrue(engine.isTypical(activity("WALKING", null, 5000)));
+        assertTrue(engine.isTypical(activity("WALKING", 30, null)));
+        assertTrue(engine.isTypical(activity("WALKING", 0, 5000)));
+    }
+
+    @Test
+    void unknownAndMissingTypesUseTheGenericRule() {
+        // The generic rule allows 2 to 12 calories per minute
+        assertTrue(engine.isTypical(activity("ROWING", 30, 330)));
+        assertFalse(engine.isTypical(activity("ROWING", 30, 390)));
+        assertTrue(engine.isTypical(activity(null, 30, 330)));
+
+        Recommendation recommendation = engine.recommend(activity(null, 30, 180));
+        assertEquals("Overall: Good activity session of 30 minutes, which meets the target for general fitness."
+                + "\n\nCaloriesBurned:180 calories, about 6.0 per minute, a light effort for this activity.",
+                recommendation.getRecommendation());
+        assertEquals(List.of("Mixed session Combine 20 minutes of moderate cardio with 10 minutes of mobility work."),
+                recommendation.getSuggestions());
+    }
+
+    @Test
+    void sessionAtTargetOnlySuggestsConsistency() {
+        Recommendation recommendation = engine.recommend(activity("WALKING", 30, 150));
+
+        assertEquals("Overall: Good walking session of 30 minutes, which meets the target for low-impact aerobic fitness."
+                + "\n\nCaloriesBurned:150 calories, about 5.0 per minute, a solid effort for this activity.",
+                recommendation.getRecommendation());
+        assertEquals(List.of("Consistency Aim for at least three sessions a week."), recommendation.getImprovements());
+        assertEquals("a1", recommendation.getActivityId());
+        assertEquals("u1", recommendation.getUserId());
+        assertEquals("WALKING", recommendation.getActivityType());
+        assertEquals(3, recommendation.getSafety().size());
+    }
+
+    @Test
+    void sessionBetweenMinimumAndTargetSuggestsExtendingIt() {
+        Recommendation recommendation = engine.recommend(activity("WALKING", 25, 100));
+
+        assertTrue(recommendation.getRecommendation().startsWith("Overall: A 25 minute walking session"));
+        assertEquals(List.of("Duration Extend the session gradually towards 30 minutes.",
+                        "Consistency Aim for at least three sessions a week."),
+                recommendation.getImprovements());
+    }
+
+    @Test
+    void sessionBelowMinimumSuggestsBuildingUp() {
+        Recommendation recommendation = engine.recommend(activity("HIKING", 44, 300));
+
+        assertEquals("Duration Build up towards 45 minutes per session.", recommendation.getImprovements().get(0));
+    }
+
+    @Test
+    void missingDurationAndCaloriesStillProduceARecommendation() {
+        Recommendation recommendation = engine.recommend(activity("STRETCHING", null, null));
+
+        assertEquals("Overall: A 0 minute stretching session still supports flexibility and mobility.",
+                recommendation.getRecommendation());
+        assertEquals("Duration Build up towards 10 minutes per session.", recommendation.getImprovements().get(0));
+    }
+
+    @Test
+    void typeNamesAreHumanized() {
+        Recommendation recommendation = engine.recommend(activity("WEIGH_TRAINING", 30, 200));
+
+        assertTrue(recommendation.getRecommendation().contains("weigh training session"));
+    }
+
+    private Activity activity(String type, Integer duration, Integer calories) {
+        Activity activity = new Activity();
+        activity.setId("a1");
+        activity.setUserId("u1");
+        activity.setType(type);
+        activity.setDuration(duration);
+        activity.setCaloriesBurned(calories);
+        return activity;
+    }
+}
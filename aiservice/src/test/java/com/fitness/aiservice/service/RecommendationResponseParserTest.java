@@ -0,0 +1,134 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.ActivityAnalysis;
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RecommendationResponseParserTest {
+
+    private static final String ANALYSIS = """
+            {"analysis":{"overall":"Solid run","pace":"Even splits","calories":"On target"},\
+            "improvements":[{"area":"Cadence","recommendation":"Aim for 170 steps/min"}],\
+            "suggestions":[{"workout":"Tempo run","description":"20 minutes at threshold"}],\
+            "safety":["Hydrate"]}""";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationResponseParser parser =
+            new RecommendationResponseParser(mapper, new LlmMetrics(meterRegistry));
+
+    @Test
+    void parsesFencedAnalysisIntoARecommendation() throws IOException {
+        Recommendation recommendation = parser.parse(activity(), gemini("```json\n" + ANALYSIS + "\n```"));
+
+        assertEquals("a1", recommendation.getActivityId());
+        assertEquals("u1", recommendation.getUserId());
+        assertEquals("RUNNING", recommendation.getActivityType());
+        // Sections are labelled in a fixed order, and missing ones are left out
+        assertEquals("Overall: Solid run\n\nPace:Even splits\n\nCaloriesBurned:On target",
+                recommendation.getRecommendation());
+        assertEquals(List.of("Cadence Aim for 170 steps/min"), recommendation.getImprovements());
+        assertEquals(List.of("Tempo run 20 minutes at threshold"), recommendation.getSuggestions());
+        assertEquals(List.of("Hydrate"), recommendation.getSafety());
+    }
+
+    @Test
+    void recordsTokenUsage() throws IOException {
+        parser.parse(activity(), gemini(ANALYSIS));
+
+        assertEquals(120, meterRegistry.counter("ai.llm.tokens", "type", "prompt").count());
+        assertEquals(80, meterRegistry.counter("ai.llm.tokens", "type", "completion").count());
+    }
+
+    @Test
+    void missingSectionsFallBackToDefaults() throws IOException {
+        Recommendation recommendation = parser.parse(activity(), gemini("{}"));
+
+        assertEquals("", recommendation.getRecommendation());
+        assertEquals(List.of("No specific improvement provided"), recommendation.getImprovements());
+        assertEquals(List.of("No specific suggestion provided"), recommendation.getSuggestions());
+        assertEquals(List.of("Follow general safety guidelines."), recommendation.getSafety());
+    }
+
+    @Test
+    void nullFieldsInsideEntriesBecomeEmptyText() throws IOException {
+        Recommendation recommendation = parser.parse(activity(),
+                gemini("{\"improvements\":[{\"area\":\"Pace\"}],\"suggestions\":[{\"description\":\"Rest day\"}]}"));
+
+        assertEquals(List.of("Pace "), recommendation.getImprovements());
+        assertEquals(List.of(" Rest day"), recommendation.getSuggestions());
+    }
+
+    @Test
+    void unexpectedShapesAreCoercedToText() throws IOException {
+        Recommendation recommendation = parser.parse(activity(), gemini("""
+                {"analysis":{"overall":{"summary":"Solid run","rating":8},"pace":5.5},\
+                "improvements":{"area":"Cadence","recommendation":["Shorter strides","170 steps/min"]},\
+                "safety":[{"tip":"Hydrate","detail":"500 ml before"},"Warm up"]}"""));
+
+        assertEquals("Overall: Solid run 8\n\nPace:5.5", recommendation.getRecommendation());
+        assertEquals(List.of("Cadence Shorter strides 170 steps/min"), recommendation.getImprovements());
+        assertEquals(List.of("Hydrate 500 ml before", "Warm up"), recommendation.getSafety());
+    }
+
+    @Test
+    void missingCandidateTextIsAnError() {
+        assertThrows(IOException.class, () -> parser.parse(activity(), "{\"candidates\":[]}"));
+    }
+
+    @Test
+    void textWithoutJsonIsAnError() {
+        assertThrows(IOException.class, () -> parser.parse(activity(), gemini("Sorry, I cannot help with that.")));
+        assertThrows(IOException.class, () -> parser.parse(activity(), gemini("} {")));
+    }
+
+    @Test
+    void parsesBareBatchArray() throws IOException {
+        List<ActivityAnalysis> results = parser.parseBatch(gemini("```json\n[" + batchEntry("a1") + "," + batchEntry("a2") + "]\n```"));
+
+        assertEquals(List.of("a1", "a2"), results.stream().map(ActivityAnalysis::getActivityId).toList());
+        assertEquals("Solid run", results.get(0).getAnalysis().getOverall());
+    }
+
+    @Test
+    void parsesBatchWrappedInResults() throws IOException {
+        List<ActivityAnalysis> results = parser.parseBatch(gemini("{\"results\":[" + batchEntry("a1") + "]}"));
+
+        assertEquals("a1", results.get(0).getActivityId());
+    }
+
+    @Test
+    void batchWithoutResultsArrayIsAnError() {
+        assertThrows(IOException.class, () -> parser.parseBatch(gemini(ANALYSIS)));
+        assertThrows(IOException.class, () -> parser.parseBatch(gemini("{\"results\":{}}")));
+    }
+
+    private String batchEntry(String activityId) {
+        return "{\"activityId\":\"" + activityId + "\"," + ANALYSIS.substring(1);
+    }
+
+    // A generateContent response whose first candidate carries the given text
+    private String gemini(String text) throws IOException {
+        return mapper.writeValueAsString(Map.of(
+                "candidates", List.of(Map.of("content", Map.of("parts", List.of(Map.of("text", text))))),
+                "usageMetadata", Map.of("promptTokenCount", 120, "candidatesTokenCount", 80, "totalTokenCount", 200)));
+    }
+
+    private Activity activity() {
+        Activity activity = new Activity();
+        activity.setId("a1");
+        activity.setUserId("u1");
+        activity.setType("RUNNING");
+        return activity;
+    }
+}
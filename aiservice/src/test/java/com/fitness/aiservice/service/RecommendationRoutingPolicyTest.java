@@ -0,0 +1,115 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecommendationRoutingPolicyTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RecommendationRoutingPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        policy = new RecommendationRoutingPolicy(new LocalRecommendationEngine(), meterRegistry);
+        // Same values as the @Value defaults
+        ReflectionTestUtils.setField(policy, "enabled", true);
+        ReflectionTestUtils.setField(policy, "localTypes", Set.of("STRETCHING", "WALKING", "YOGA"));
+        ReflectionTestUtils.setField(policy, "maxDurationMinutes", 90);
+        ReflectionTestUtils.setField(policy, "maxAdditionalMetrics", 0);
+    }
+
+    @Test
+    void simpleActivityStaysLocal() {
+        assertTrue(policy.routesLocally(activity("WALKING", 30, 150)));
+        assertEquals(1, routed("local", "simple"));
+    }
+
+    @Test
+    void disabledRoutingSendsEverythingToTheLlm() {
+        ReflectionTestUtils.setField(policy, "enabled", false);
+
+        assertFalse(policy.routesLocally(activity("WALKING", 30, 150)));
+        assertEquals(1, routed("llm", "disabled"));
+    }
+
+    @Test
+    void unconfiguredOrMissingTypeGoesToTheLlm() {
+        assertFalse(policy.routesLocally(activity("RUNNING", 30, 300)));
+        assertFalse(policy.routesLocally(activity("ROWING", 30, 300)));
+        assertFalse(policy.routesLocally(activity(null, 30, 300)));
+        assertEquals(3, routed("llm", "type"));
+    }
+
+    @Test
+    void additionalMetricsOverTheLimitGoToTheLlm() {
+        Activity activity = activity("WALKING", 30, 150);
+        activity.setAdditionalMetrics(Map.of("heartRate", 120));
+
+        assertFalse(policy.routesLocally(activity));
+        assertEquals(1, routed("llm", "metrics"));
+
+        ReflectionTestUtils.setField(policy, "maxAdditionalMetrics", 1);
+        assertTrue(policy.routesLocally(activity));
+    }
+
+    @Test
+    void emptyAdditionalMetricsStayLocal() {
+        Activity activity = activity("WALKING", 30, 150);
+        activity.setAdditionalMetrics(Map.of());
+
+        assertTrue(policy.routesLocally(activity));
+    }
+
+    @Test
+    void durationUpToTheLimitStaysLocal() {
+        assertTrue(policy.routesLocally(activity("WALKING", 90, 300)));
+        assertFalse(policy.routesLocally(activity("WALKING", 91, 300)));
+        assertEquals(1, routed("llm", "duration"));
+    }
+
+    @Test
+    void missingOrNonPositiveDurationGoesToTheLlm() {
+        assertFalse(policy.routesLocally(activity("WALKING", null, 150)));
+        assertFalse(policy.routesLocally(activity("WALKING", 0, 150)));
+        assertFalse(policy.routesLocally(activity("WALKING", -5, 150)));
+        assertEquals(3, routed("llm", "duration"));
+    }
+
+    @Test
+    void missingCaloriesStaysLocal() {
+        assertTrue(policy.routesLocally(activity("YOGA", 45, null)));
+    }
+
+    @Test
+    void unusualIntensityGoesToTheLlm() {
+        // 20 calories per minute is far above WALKING's typical range
+        assertFalse(policy.routesLocally(activity("WALKING", 30, 600)));
+        assertFalse(policy.routesLocally(activity("WALKING", 30, 30)));
+        assertEquals(2, routed("llm", "unusual"));
+    }
+
+    private double routed(String route, String reason) {
+        return meterRegistry.counter("ai.recommendation.route", "route", route, "reason", reason).count();
+    }
+
+    private Activity activity(String type, Integer duration, Integer calories) {
+        Activity activity = new Activity();
+        activity.setId("a1");
+        activity.setUserId("u1");
+        activity.setType(type);
+        activity.setDuration(duration);
+        activity.setCaloriesBurned(calories);
+        return activity;
+    }
+}
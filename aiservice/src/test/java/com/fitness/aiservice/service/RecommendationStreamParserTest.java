@@ -0,0 +1,130 @@
+package com.fitness.aiservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecommendationStreamParserTest {
+
+    private static final String JSON = """
+            {"analysis":{"overall":"Steady café-pace run","pace":"5:30 min/km"},\
+            "score":42,\
+            "improvements":[{"area":"Cadence","recommendation":"Aim for 170 steps/min"}],\
+            "suggestions":[{"workout":"Tempo run","description":"20 minutes at threshold"}],\
+            "safety":["Hydrate","Warm up"]}""";
+
+    private static final String FENCED = "```json\n" + JSON + "\n```";
+
+    private static final List<String> SECTIONS = List.of("analysis", "score", "improvements", "suggestions", "safety");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void fencedObjectInOneChunk() throws IOException {
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            assertEquals(SECTIONS, names(parser.feed(FENCED)));
+            assertTrue(parser.isComplete());
+            assertEquals(mapper.readTree(JSON), parser.result());
+        }
+    }
+
+    @Test
+    void everyTwoChunkSplitGivesTheSameSections() throws IOException {
+        for (int split = 0; split <= FENCED.length(); split++) {
+            try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+                List<String> names = new ArrayList<>(names(parser.feed(FENCED.substring(0, split))));
+                names.addAll(names(parser.feed(FENCED.substring(split))));
+
+                assertEquals(SECTIONS, names, "split at " + split);
+                assertTrue(parser.isComplete(), "split at " + split);
+                assertEquals(mapper.readTree(JSON), parser.result(), "split at " + split);
+            }
+        }
+    }
+
+    @Test
+    void fenceSplitAcrossChunksIsSkipped() throws IOException {
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            assertEquals(List.of(), parser.feed("```js"));
+            assertEquals(List.of(), parser.feed("on\n"));
+            assertEquals(SECTIONS, names(parser.feed(JSON)));
+        }
+    }
+
+    @Test
+    void nestedValueIsEmittedOnlyWhenItCloses() throws IOException {
+        int analysisEnd = JSON.indexOf("},") + 1;
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            // Everything up to the last character of the analysis object, one character per chunk
+            for (int i = 0; i < analysisEnd - 1; i++) {
+                assertEquals(List.of(), parser.feed(JSON.substring(i, i + 1)), "chunk " + i);
+            }
+            List<RecommendationStreamParser.Section> sections = parser.feed("}");
+
+            assertEquals(List.of("analysis"), names(sections));
+            assertEquals("5:30 min/km", sections.get(0).value().path("pace").asText());
+        }
+    }
+
+    @Test
+    void numberSplitMidTokenIsNotCutShort() throws IOException {
+        int scoreDigits = JSON.indexOf("42");
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            assertEquals(List.of("analysis"), names(parser.feed(JSON.substring(0, scoreDigits + 1))));
+            // "4" alone could still be followed by more digits
+            assertEquals(List.of(), parser.feed("2"));
+
+            List<RecommendationStreamParser.Section> sections = parser.feed(JSON.substring(scoreDigits + 2));
+            assertEquals(42, sections.get(0).value().asInt());
+        }
+    }
+
+    @Test
+    void multiByteCharactersSurviveChunkBoundaries() throws IOException {
+        int accent = JSON.indexOf('é');
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            parser.feed(JSON.substring(0, accent));
+            parser.feed(JSON.substring(accent, accent + 1));
+            parser.feed(JSON.substring(accent + 1));
+
+            assertEquals("Steady café-pace run", parser.result().path("analysis").path("overall").asText());
+        }
+    }
+
+    @Test
+    void incompleteStreamKeepsOnlyFinishedSections() throws IOException {
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            parser.feed(JSON.substring(0, JSON.indexOf("\"suggestions\"") + 20));
+
+            assertFalse(parser.isComplete());
+            assertEquals(List.of("analysis", "score", "improvements"), fieldNames(parser));
+        }
+    }
+
+    @Test
+    void textAfterTheClosingBraceIsIgnored() throws IOException {
+        try (RecommendationStreamParser parser = new RecommendationStreamParser(mapper)) {
+            parser.feed(JSON);
+
+            assertEquals(List.of(), parser.feed("\n```\n{\"extra\":true}"));
+            assertEquals(SECTIONS, fieldNames(parser));
+        }
+    }
+
+    private List<String> names(List<RecommendationStreamParser.Section> sections) {
+        return sections.stream().map(RecommendationStreamParser.Section::name).toList();
+    }
+
+    private List<String> fieldNames(RecommendationStreamParser parser) {
+        List<String> names = new ArrayList<>();
+        parser.result().fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+}
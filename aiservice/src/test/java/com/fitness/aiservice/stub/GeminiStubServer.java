@@ -0,0 +1,183 @@
+package com.fitness.aiservice.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the Gemini generateContent and streamGenerateContent (alt=sse) endpoints.
+ * Latency follows a log-normal distribution fitted to the configured median and p99, a fraction of
+ * calls fail with the configured status, and successful calls return a canned analysis either as
+ * bare JSON or wrapped in a ```json fence.
+ *
+ * Point gemini.api.url at {@link #generateUrl()} and gemini.api.stream-url at {@link #streamUrl()}.
+ */
+public class GeminiStubServer implements AutoCloseable {
+
+    public enum ResponseFormat { JSON, FENCED }
+
+    public record Config(Duration medianLatency, Duration p99Latency, double errorRate, int errorStatus,
+                         ResponseFormat format, int streamChunks) {
+
+        public static Config defaults() {
+            return new Config(Duration.ofMillis(800), Duration.ofMillis(3000), 0.0, 503, ResponseFormat.FENCED, 8);
+        }
+
+        public Config withLatency(Duration median, Duration p99) {
+            return new Config(median, p99, errorRate, errorStatus, format, streamChunks);
+        }
+
+        public Config withErrors(double rate, int status) {
+            return new Config(medianLatency, p99Latency, rate, status, format, streamChunks);
+        }
+
+        public Config withFormat(ResponseFormat responseFormat) {
+            return new Config(medianLatency, p99Latency, errorRate, errorStatus, responseFormat, streamChunks);
+        }
+    }
+
+    static final String ANALYSIS = """
+            {
+              "analysis": {
+                "overall": "Solid steady-state session with consistent effort throughout.",
+                "pace": "Pace was sustainable for the duration.",
+                "heartRate": "Heart rate stayed mostly in zone 3.",
+                "calories": "Calorie burn is in line with duration and intensity."
+              },
+              "improvements": [
+                {"area": "Cadence", "recommendation": "Aim for 170-180 steps per minute to reduce impact."}
+              ],
+              "suggestions": [
+                {"workout": "Interval run", "description": "6 x 400m at 5k pace with 90s jog recovery."}
+              ],
+              "safety": [
+                "Warm up for 10 minutes before intervals.",
+                "Hydrate before, during and after the session."
+              ]
+            }""";
+
+    // z-score of the 99th percentile of a standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    private final HttpServer server;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Config config;
+
+    public GeminiStubServer(Config config) throws IOException {
+        this.config = config;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String generateUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1beta/models/stub:generateContent?key=";
+    }
+
+    public String streamUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1beta/models/stub:streamGenerateContent?alt=sse&key=";
+    }
+
+    // Takes effect for the next request, e.g. to simulate an outage mid-run
+    public void reconfigure(Config newConfig) {
+        this.config = newConfig;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Config current = config;
+        requests.incrementAndGet();
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            long latencyMs = sampleLatencyMs(current);
+
+            if (ThreadLocalRandom.current().nextDouble() < current.errorRate()) {
+                failures.incrementAndGet();
+                sleep(latencyMs);
+                byte[] body = "{\"error\":{\"message\":\"stubbed failure\"}}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(current.errorStatus(), body.length);
+                exchange.getResponseBody().write(body);
+                return;
+            }
+
+            String text = current.format() == ResponseFormat.FENCED ? "```json\n" + ANALYSIS + "\n```\n" : ANALYSIS;
+            if (exchange.getRequestURI().getPath().contains("streamGenerateContent")) {
+                stream(exchange, text, latencyMs, current.streamChunks());
+            } else {
+                sleep(latencyMs);
+                byte[] body = envelope(text).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        }
+    }
+
+    // Splits the completion into chunks spread evenly over the sampled latency
+    private void stream(HttpExchange exchange, String text, long latencyMs, int chunks) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        int chunkSize = Math.max(1, (text.length() + chunks - 1) / chunks);
+        for (int start = 0; start < text.length(); start += chunkSize) {
+            sleep(latencyMs / chunks);
+            String chunk = text.substring(start, Math.min(text.length(), start + chunkSize));
+            out.write(("data: " + envelope(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private String envelope(String text) throws IOException {
+        return mapper.writeValueAsString(Map.of(
+                "candidates", new Object[]{Map.of(
+                        "content", Map.of("role", "model", "parts", new Object[]{Map.of("text", text)}),
+                        "finishReason", "STOP")},
+                // Rough token estimate, enough to exercise the usage accounting
+                "usageMetadata", Map.of(
+                        "promptTokenCount", 250,
+                        "candidatesTokenCount", text.length() / 4,
+                        "totalTokenCount", 250 + text.length() / 4)));
+    }
+
+    private long sampleLatencyMs(Config current) {
+        double median = current.medianLatency().toMillis();
+        if (median <= 0) return 0;
+        double sigma = Math.log(Math.max(current.p99Latency().toMillis(), median) / median) / Z_99;
+        return Math.round(median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
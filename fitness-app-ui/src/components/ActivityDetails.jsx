@@ -1,56 +1,98 @@
 import { useEffect, useState } from "react";
 import { useParams } from "react-router";
-import { getActivityDetails } from "../services/api";
+import {
+  getActivityDetails,
+  streamActivityRecommendation,
+  subscribeToRecommendations,
+} from "../services/api";
 import { Box, Card, CardContent, Divider, Typography } from "@mui/material";
 
 function ActivityDetails() {
   const { id } = useParams();
   const [activity, setActivity] = useState(null);
-  const [recommendation, setRecommendation] = useState(null);
+  // Sections streamed while the saved recommendation is not available yet
+  const [draft, setDraft] = useState(null);
 
   useEffect(() => {
+    const subscription = new AbortController();
+    let streaming = false;
+    const show = (data) => {
+      setActivity(data);
+      subscription.abort();
+    };
+    const streamDraft = () => {
+      streaming = true;
+      streamActivityRecommendation(
+        id,
+        (event, data) => {
+          if (event === "complete") {
+            setDraft(data.recommendation);
+          } else {
+            const field = event === "analysis" ? "recommendation" : event;
+            setDraft((previous) => ({ ...previous, [field]: data.text ?? data.items }));
+          }
+        },
+        subscription.signal
+      ).catch((error) => {
+        if (!subscription.signal.aborted) console.error(error);
+      });
+    };
     const fetchActivityDetail = async () => {
       try {
         const response = await getActivityDetails(id);
-        setActivity(response.data);
-        setRecommendation(response.data.recommendation);
+        show(response.data);
       } catch (error) {
-        console.error(error);
+        // Not analyzed yet: show sections as they are generated until the open
+        // subscription delivers the saved recommendation
+        if (!streaming) streamDraft();
       }
     };
-    fetchActivityDetail();
+    // Subscribe before fetching and refetch on every reconnect, so a recommendation
+    // saved while no stream was open is not missed
+    subscribeToRecommendations(
+      (data) => {
+        if (data.activityId === id) show(data);
+      },
+      subscription.signal,
+      fetchActivityDetail
+    );
+    return () => subscription.abort();
   }, [id]);
 
-  if (!activity) {
+  const shown = activity ?? draft;
+
+  if (!shown) {
     return <Typography>Loading...</Typography>;
   }
 
   return (
     <Box sx={{ maxWidth: 800, mx: "auto", p: 2 }}>
-      <Card sx={{ mb: 2 }}>
-        <CardContent>
-          <Typography variant="h5" gutterBottom>
-            Activity Details
-          </Typography>
-          <Typography>Type: {activity.type}</Typography>
-          <Typography>Duration: {activity.duration}</Typography>
-          <Typography>Calories Burned: {activity.caloriesBurned}</Typography>
-          <Typography>Date: {activity.createdAt}</Typography>
-        </CardContent>
-      </Card>
-      {recommendation && (
+      {activity && (
+        <Card sx={{ mb: 2 }}>
+          <CardContent>
+            <Typography variant="h5" gutterBottom>
+              Activity Details
+            </Typography>
+            <Typography>Type: {activity.type}</Typography>
+            <Typography>Duration: {activity.duration}</Typography>
+            <Typography>Calories Burned: {activity.caloriesBurned}</Typography>
+            <Typography>Date: {activity.createdAt}</Typography>
+          </CardContent>
+        </Card>
+      )}
+      {shown.recommendation && (
         <Card>
           <CardContent>
             <Typography variant="h5" gutterBottom>
               AI Recommendation
             </Typography>
             <Typography variant="h6">Analysis</Typography>
-            <Typography paragraph>{activity.recommendation}</Typography>
+            <Typography paragraph>{shown.recommendation}</Typography>
 
             <Divider sx={{ my: 2 }} />
 
             <Typography variant="h6">Improvements</Typography>
-            {activity?.improvements?.map((improvement, index) => (
+            {shown?.improvements?.map((improvement, index) => (
               <Typography key={index} paragraph>
                 {improvement}
               </Typography>
@@ -59,7 +101,7 @@ function ActivityDetails() {
             <Divider sx={{ my: 2 }} />
 
             <Typography variant="h6">Suggestions</Typography>
-            {activity?.suggestions?.map((suggestion, index) => (
+            {shown?.suggestions?.map((suggestion, index) => (
               <Typography key={index} paragraph>
                 {suggestion}
               </Typography>
@@ -68,7 +110,7 @@ function ActivityDetails() {
             <Divider sx={{ my: 2 }} />
 
             <Typography variant="h6">Safety Guidelines</Typography>
-            {activity?.safety?.map((safety, index) => (
+            {shown?.safety?.map((safety, index) => (
               <Typography key={index} paragraph>
                 {safety}
               </Typography>
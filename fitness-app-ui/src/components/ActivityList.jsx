@@ -1,16 +1,20 @@
-import { Card, CardContent, Grid, Typography } from "@mui/material";
+import { Button, Card, CardContent, Grid, Typography } from "@mui/material";
 import { useEffect, useState } from "react";
 import { useNavigate } from "react-router";
 import { getActivities } from "../services/api";
 
 function ActivityList() {
   const [activities, setActivities] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
   const navigate = useNavigate();
 
-  const fetchActivities = async () => {
+  const fetchActivities = async (cursor) => {
     try {
-      const response = await getActivities();
-      setActivities(response.data);
+      const response = await getActivities(cursor);
+      setActivities((loaded) =>
+        cursor ? [...loaded, ...response.data.items] : response.data.items
+      );
+      setNextCursor(response.data.nextCursor);
     } catch (error) {
       console.error(error);
     }
@@ -40,6 +44,13 @@ function ActivityList() {
           </Card>
         </Grid>
       ))}
+      {nextCursor && (
+        <Grid>
+          <Button variant="outlined" onClick={() => fetchActivities(nextCursor)}>
+            Load more
+          </Button>
+        </Grid>
+      )}
     </Grid>
   );
 }
@@ -19,7 +19,81 @@ api.interceptors.request.use((config) => {
   return config;
 });
 
-export const getActivities = () => api.get("/activities");
+// Newest first; pass the previous page's nextCursor to continue
+export const getActivities = (cursor) =>
+  api.get("/activities", { params: cursor ? { cursor } : {} });
 export const addActivity = (activity) => api.post("/activities", activity);
 export const getActivityDetails = (id) =>
   api.get(`/recommendations/activity/${id}`);
+
+const authHeaders = () => {
+  const token = localStorage.getItem("token");
+  const userId = localStorage.getItem("userId");
+  return {
+    ...(token ? { Authorization: `Bearer ${token}` } : {}),
+    ...(userId ? { "X-User-ID": userId } : {}),
+  };
+};
+
+// EventSource only supports GET without custom headers, so text/event-stream
+// responses are read with fetch and split into events here.
+const readEventStream = async (response, onEvent) => {
+  const reader = response.body.pipeThrough(new TextDecoderStream()).getReader();
+  let buffer = "";
+  for (;;) {
+    const { value, done } = await reader.read();
+    if (done) break;
+    buffer += value;
+    let boundary;
+    while ((boundary = buffer.indexOf("\n\n")) >= 0) {
+      const raw = buffer.slice(0, boundary);
+      buffer = buffer.slice(boundary + 2);
+      const event = raw.match(/^event:(.*)$/m)?.[1]?.trim();
+      const data = raw
+        .split("\n")
+        .filter((line) => line.startsWith("data:"))
+        .map((line) => line.slice(5))
+        .join("\n");
+      if (data) onEvent(event, JSON.parse(data));
+    }
+  }
+};
+
+// Streams the recommendation sections for one of the user's activities as they are generated
+export const streamActivityRecommendation = async (activityId, onEvent, signal) => {
+  const response = await fetch(`${API_URL}/recommendations/stream`, {
+    method: "POST",
+    headers: {
+      "Content-Type": "application/json",
+      Accept: "text/event-stream",
+      ...authHeaders(),
+    },
+    body: JSON.stringify({ activityId }),
+    signal,
+  });
+  if (!response.ok) throw new Error(`Stream failed: ${response.status}`);
+  await readEventStream(response, onEvent);
+};
+
+// Delivers the user's recommendations as they are saved, reconnecting when the
+// server closes the stream, until the signal is aborted. onConnect runs each time
+// the stream is open, so the caller can refetch whatever was saved while it was not.
+export const subscribeToRecommendations = async (onRecommendation, signal, onConnect) => {
+  while (!signal.aborted) {
+    try {
+      const response = await fetch(`${API_URL}/recommendations/events`, {
+        headers: { Accept: "text/event-stream", ...authHeaders() },
+        signal,
+      });
+      if (!response.ok) throw new Error(`Subscription failed: ${response.status}`);
+      onConnect?.();
+      await readEventStream(response, (event, data) => {
+        if (event === "recommendation") onRecommendation(data);
+      });
+    } catch (error) {
+      if (signal.aborted) return;
+      console.error(error);
+      await new Promise((resolve) => setTimeout(resolve, 3000));
+    }
+  }
+};
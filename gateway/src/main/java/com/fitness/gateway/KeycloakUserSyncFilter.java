@@ -1,9 +1,7 @@
 package com.fitness.gateway;
 
 import com.fitness.gateway.user.RegisterRequest;
-import com.fitness.gateway.user.UserService;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
+import com.fitness.gateway.user.UserSyncService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -17,59 +15,28 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class KeycloakUserSyncFilter implements WebFilter {
     @Autowired
-    private UserService userService;
+    private UserSyncService userSyncService;
 
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
         String userId = exchange.getRequest().getHeaders().getFirst("X-USer-ID");
         String token = exchange.getRequest().getHeaders().getFirst("Authorization");
-        RegisterRequest request = getUserDetails(token);
+        if (token == null) return chain.filter(exchange);
 
-        if (userId == null) userId = request.getKeycloakId();
-
-        if (request.getKeycloakId() != null && token != null) {
-            String finalUserId = userId;
-            return userService.validateUser(userId)
-                    .flatMap(exist -> {
-                        if (!exist) {
-                            // Register User
-                            if (request != null) {
-                                return userService.registerRequest(request)
-                                        .then(Mono.empty());
-                            } else {
-                                Mono.empty();
-                            }
-                        }
-                        log.info("User already exist. Skipping sync.");
-                        return Mono.empty();
-                    })
-                    .then(Mono.defer(() -> {
-                        ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
-                                .header("X-User-ID", finalUserId)
-                                .build();
-                        return chain.filter(exchange.mutate().request(mutatedRequest).build());
-                    }));
-        }
-        return chain.filter(exchange);
-    }
+        // Cached per token, so the JWT is only parsed on the first request
+        RegisterRequest request = userSyncService.getUserDetails(token);
+        if (request == null || request.getKeycloakId() == null) return chain.filter(exchange);
 
-    private RegisterRequest getUserDetails(String token) {
-        try {
-            String tokenWithoutBearer = token.replace("Bearer ", "").trim();
-            SignedJWT signedJWT = SignedJWT.parse(tokenWithoutBearer);
-            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+        if (userId == null) userId = request.getKeycloakId();
 
-            RegisterRequest request = new RegisterRequest();
-            request.setEmail(claims.getStringClaim("email"));
-            request.setKeycloakId(claims.getStringClaim("sub"));
-            request.setPassword("password-placeholder");
-            request.setFirstName(claims.getStringClaim("given_name"));
-            request.setLastName(claims.getStringClaim("family_name"));
-            return request;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+        String finalUserId = userId;
+        return userSyncService.syncUser(finalUserId, request)
+                .then(Mono.defer(() -> {
+                    ServerHttpRequest mutatedRequest = exchange.getRequest().mutate()
+                            .header("X-User-ID", finalUserId)
+                            .build();
+                    return chain.filter(exchange.mutate().request(mutatedRequest).build());
+                }));
     }
 }
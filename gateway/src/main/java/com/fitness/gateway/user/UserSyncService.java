@@ -0,0 +1,101 @@
+package com.fitness.gateway.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+@Slf4j
+public class UserSyncService {
+
+    private final UserService userService;
+
+    // Keycloak IDs that were validated/registered within the TTL window
+    private final Cache<String, Boolean> syncedUsers;
+
+    // Parsed claims keyed by raw Authorization header, so a token is only parsed once
+    private final Cache<String, RegisterRequest> tokenClaims;
+
+    // In-flight validate-and-register calls keyed by Keycloak ID (single-flight)
+    private final Map<String, Mono<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public UserSyncService(UserService userService,
+                           MeterRegistry meterRegistry,
+                           @Value("${user.sync.cache.max-size:10000}") long syncedMaxSize,
+                           @Value("${user.sync.cache.ttl:10m}") Duration syncedTtl,
+                           @Value("${user.sync.claims-cache.max-size:10000}") long claimsMaxSize,
+                           @Value("${user.sync.claims-cache.ttl:5m}") Duration claimsTtl) {
+        this.userService = userService;
+        this.syncedUsers = Caffeine.newBuilder()
+                .maximumSize(syncedMaxSize)
+                .expireAfterWrite(syncedTtl)
+                .recordStats()
+                .build();
+        this.tokenClaims = Caffeine.newBuilder()
+                .maximumSize(claimsMaxSize)
+                .expireAfterWrite(claimsTtl)
+                .recordStats()
+                .build();
+
+        // Exposes cache.gets{result=hit|miss}, cache.evictions, cache.size
+        CaffeineCacheMetrics.monitor(meterRegistry, syncedUsers, "gateway.synced-users");
+        CaffeineCacheMetrics.monitor(meterRegistry, tokenClaims, "gateway.token-claims");
+    }
+
+    public RegisterRequest getUserDetails(String token) {
+        return tokenClaims.get(token, this::parseUserDetails);
+    }
+
+    public Mono<Void> syncUser(String userId, RegisterRequest request) {
+        if (syncedUsers.getIfPresent(userId) != null) return Mono.empty();
+
+        // Parallel first requests for the same user subscribe to one shared call
+        return inFlight.computeIfAbsent(userId, id -> validateAndRegister(id, request));
+    }
+
+    private Mono<Void> validateAndRegister(String userId, RegisterRequest request) {
+        return userService.validateUser(userId)
+                .flatMap(exist -> {
+                    if (!exist) {
+                        // Register User
+                        return userService.registerRequest(request).then();
+                    }
+                    log.info("User already exist. Skipping sync.");
+                    return Mono.<Void>empty();
+                })
+                .doOnSuccess(ignored -> syncedUsers.put(userId, Boolean.TRUE))
+                .doFinally(signal -> inFlight.remove(userId))
+                .cache();
+    }
+
+    private RegisterRequest parseUserDetails(String token) {
+        try {
+            String tokenWithoutBearer = token.replace("Bearer ", "").trim();
+            SignedJWT signedJWT = SignedJWT.parse(tokenWithoutBearer);
+            JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+
+            RegisterRequest request = new RegisterRequest();
+            request.setEmail(claims.getStringClaim("email"));
+            request.setKeycloakId(claims.getStringClaim("sub"));
+            request.setPassword("password-placeholder");
+            request.setFirstName(claims.getStringClaim("given_name"));
+            request.setLastName(claims.getStringClaim("family_name"));
+            return request;
+        } catch (Exception e) {
+            // Returning null keeps unparseable tokens out of the cache
+            log.warn("Failed to parse user details from token", e);
+            return null;
+        }
+    }
+}
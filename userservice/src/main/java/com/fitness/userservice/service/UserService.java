@@ -7,6 +7,7 @@ import com.fitness.userservice.repository.UserRepository;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -29,7 +30,13 @@ public class UserService {
         user.setFirstName(request.getFirstName());
         user.setLastName(request.getLastName());
 
-        return userResponseMapper(userRepository.save(user));
+        try {
+            return userResponseMapper(userRepository.saveAndFlush(user));
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent registration won the race on the unique email
+            log.info("User already registered concurrently: {}", request.getEmail());
+            return userResponseMapper(userRepository.findByEmail(request.getEmail()));
+        }
     }
 
     public UserResponse getUserProfile(String userId) {